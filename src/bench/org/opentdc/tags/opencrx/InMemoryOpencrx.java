@@ -0,0 +1,754 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+import javax.naming.Context;
+import javax.naming.spi.InitialContextFactory;
+import javax.servlet.ServletContext;
+
+import org.openmdx.base.naming.Path;
+
+/**
+ * In-memory stand-in for the openCRX backend used by the benchmarks. The
+ * JMI and JDO interfaces accessed by the service provider are implemented
+ * with dynamic proxies backed by maps. Queries support the predicates and
+ * orderings the provider uses. Transactions are not isolated and a
+ * rollback does not undo modifications.
+ *
+ */
+public class InMemoryOpencrx {
+
+	private static final String SEGMENT_XRI = "xri://@openmdx*org.opencrx.kernel.code1/provider/CRX/segment/Standard";
+	private static final String PRINCIPAL = "bench";
+
+	private static volatile InMemoryOpencrx current = null;
+
+	private final Map<Path,Object> objects = new ConcurrentHashMap<Path,Object>();
+	private final org.opencrx.kernel.code1.jmi1.Segment codeSegment;
+	private final PersistenceManager persistenceManager;
+	private final PersistenceManagerFactory persistenceManagerFactory;
+
+	/**
+	 * Persistent or transient object. Features are read and written through
+	 * the getters and setters of the proxied interface.
+	 *
+	 */
+	private class Bean implements InvocationHandler {
+
+		private final Map<String,Object> attributes = new ConcurrentHashMap<String,Object>();
+		private final Map<String,Map<String,Object>> references = new ConcurrentHashMap<String,Map<String,Object>>();
+		private volatile Path path = null;
+		private volatile Bean parent = null;
+		private volatile String reference = null;
+
+		/* (non-Javadoc)
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public Object invoke(
+			Object proxy,
+			Method method,
+			Object[] args
+		) throws Throwable {
+			String name = method.getName();
+			int argCount = args == null ? 0 : args.length;
+			if("equals".equals(name) && argCount == 1) {
+				return proxy == args[0];
+			} else if("hashCode".equals(name) && argCount == 0) {
+				return System.identityHashCode(proxy);
+			} else if("toString".equals(name) && argCount == 0) {
+				return String.valueOf(this.path);
+			} else if("refGetPath".equals(name) || "jdoGetObjectId".equals(name)) {
+				return this.path;
+			} else if("refDelete".equals(name)) {
+				InMemoryOpencrx.this.delete(proxy);
+				return null;
+			} else if(name.startsWith("get") && argCount == 0) {
+				String feature = decapitalize(name.substring(3));
+				if(List.class.isAssignableFrom(method.getReturnType())) {
+					return this.getList(feature);
+				}
+				Object value = this.attributes.get(feature);
+				return value == null ? defaultValue(method.getReturnType()) : value;
+			} else if(name.startsWith("get") && argCount == 1) {
+				Map<String,Object> children = this.getReference(decapitalize(name.substring(3)));
+				if(args[0] instanceof String) {
+					return children.get(args[0]);
+				} else if(args[0] != null && Proxy.isProxyClass(args[0].getClass()) && Proxy.getInvocationHandler(args[0]) instanceof QueryHandler) {
+					return ((QueryHandler)Proxy.getInvocationHandler(args[0])).execute(children.values());
+				}
+				return defaultValue(method.getReturnType());
+			} else if(name.startsWith("set") && argCount == 1) {
+				String feature = decapitalize(name.substring(3));
+				if(args[0] == null) {
+					this.attributes.remove(feature);
+				} else {
+					this.attributes.put(feature, args[0]);
+				}
+				this.touch();
+				return null;
+			} else if(name.startsWith("add") && argCount == 2 && args[0] instanceof String) {
+				InMemoryOpencrx.this.add(this, decapitalize(name.substring(3)), (String)args[0], args[1]);
+				return null;
+			}
+			return defaultValue(method.getReturnType());
+		}
+
+		/**
+		 * List valued attribute. Modifications of the list update the
+		 * modification audit fields of the owner.
+		 *
+		 */
+		private class FeatureList extends ArrayList<Object> {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public synchronized boolean add(
+				Object element
+			) {
+				Bean.this.touch();
+				return super.add(element);
+			}
+
+			@Override
+			public synchronized void add(
+				int index,
+				Object element
+			) {
+				Bean.this.touch();
+				super.add(index, element);
+			}
+
+			@Override
+			public synchronized Object set(
+				int index,
+				Object element
+			) {
+				Bean.this.touch();
+				return super.set(index, element);
+			}
+
+			@Override
+			public synchronized Object remove(
+				int index
+			) {
+				Bean.this.touch();
+				return super.remove(index);
+			}
+
+			@Override
+			public synchronized void clear(
+			) {
+				Bean.this.touch();
+				super.clear();
+			}
+		}
+
+		/**
+		 * Get list valued attribute.
+		 * 
+		 * @param feature
+		 * @return
+		 */
+		@SuppressWarnings("unchecked")
+		List<Object> getList(
+			String feature
+		) {
+			synchronized(this.attributes) {
+				List<Object> list = (List<Object>)this.attributes.get(feature);
+				if(list == null) {
+					list = new FeatureList();
+					this.attributes.put(feature, list);
+				}
+				return list;
+			}
+		}
+
+		/**
+		 * Set audit attribute.
+		 * 
+		 * @param date
+		 * @param dateFeature
+		 * @param principalFeature
+		 */
+		void setAudit(
+			Date date,
+			String dateFeature,
+			String principalFeature
+		) {
+			List<Object> principals = new ArrayList<Object>();
+			principals.add(PRINCIPAL);
+			this.attributes.put(dateFeature, date);
+			this.attributes.put(principalFeature, principals);
+		}
+
+		/**
+		 * Get the children of a reference.
+		 * 
+		 * @param reference
+		 * @return
+		 */
+		Map<String,Object> getReference(
+			String reference
+		) {
+			synchronized(this.references) {
+				Map<String,Object> children = this.references.get(reference);
+				if(children == null) {
+					children = new ConcurrentHashMap<String,Object>();
+					this.references.put(reference, children);
+				}
+				return children;
+			}
+		}
+
+		/**
+		 * Update the modification audit fields of a persistent object.
+		 * 
+		 */
+		void touch(
+		) {
+			if(this.path != null) {
+				this.setAudit(new Date(), "modifiedAt", "modifiedBy");
+			}
+		}
+	}
+
+	/**
+	 * Query. Records the predicates and orderings set through the feature
+	 * methods of the proxied query interface.
+	 *
+	 */
+	private static class QueryHandler implements InvocationHandler {
+
+		private final List<Object[]> conditions = new ArrayList<Object[]>();
+		private final List<Object[]> orderings = new ArrayList<Object[]>();
+
+		/* (non-Javadoc)
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public Object invoke(
+			Object proxy,
+			Method method,
+			Object[] args
+		) throws Throwable {
+			String name = method.getName();
+			int argCount = args == null ? 0 : args.length;
+			final Class<?> returnType = method.getReturnType();
+			if("equals".equals(name) && argCount == 1) {
+				return proxy == args[0];
+			} else if("hashCode".equals(name) && argCount == 0) {
+				return System.identityHashCode(proxy);
+			} else if("getFetchPlan".equals(name)) {
+				return newProxy(returnType, new Fluent(returnType));
+			} else if(name.startsWith("orderBy") && argCount == 0 && returnType.isInterface()) {
+				final String feature = decapitalize(name.substring(7));
+				return newProxy(
+					returnType,
+					new InvocationHandler() {
+						@Override
+						public Object invoke(
+							Object proxy,
+							Method method,
+							Object[] args
+						) {
+							if("ascending".equals(method.getName()) || "descending".equals(method.getName())) {
+								QueryHandler.this.orderings.add(new Object[]{feature, "ascending".equals(method.getName())});
+							}
+							return defaultValue(method.getReturnType());
+						}
+					}
+				);
+			} else if(argCount == 0 && returnType.isInterface() && !returnType.getName().startsWith("java.")) {
+				String feature = name;
+				for(String prefix: new String[]{"thereExists", "forAll"}) {
+					if(feature.startsWith(prefix)) {
+						feature = decapitalize(feature.substring(prefix.length()));
+					}
+				}
+				final String predicateFeature = feature;
+				return newProxy(
+					returnType,
+					new InvocationHandler() {
+						@Override
+						public Object invoke(
+							Object proxy,
+							Method method,
+							Object[] args
+						) {
+							QueryHandler.this.conditions.add(
+								new Object[]{predicateFeature, method.getName(), args == null || args.length == 0 ? null : args[0]}
+							);
+							return defaultValue(method.getReturnType());
+						}
+					}
+				);
+			}
+			return defaultValue(returnType);
+		}
+
+		/**
+		 * Execute query on the given candidates.
+		 * 
+		 * @param candidates
+		 * @return the matching candidates in the requested order
+		 */
+		List<Object> execute(
+			Iterable<Object> candidates
+		) {
+			List<Object> result = new ArrayList<Object>();
+			for(Object candidate: candidates) {
+				Bean bean = (Bean)Proxy.getInvocationHandler(candidate);
+				boolean matches = true;
+				for(Object[] condition: this.conditions) {
+					matches &= matches(bean.attributes.get((String)condition[0]), (String)condition[1], condition[2]);
+				}
+				if(matches) {
+					result.add(candidate);
+				}
+			}
+			Collections.sort(
+				result,
+				new Comparator<Object>() {
+					@SuppressWarnings({"unchecked", "rawtypes"})
+					@Override
+					public int compare(
+						Object o1,
+						Object o2
+					) {
+						for(Object[] ordering: QueryHandler.this.orderings) {
+							Comparable v1 = (Comparable)((Bean)Proxy.getInvocationHandler(o1)).attributes.get((String)ordering[0]);
+							Comparable v2 = (Comparable)((Bean)Proxy.getInvocationHandler(o2)).attributes.get((String)ordering[0]);
+							int result = v1 == null ? (v2 == null ? 0 : -1) : v2 == null ? 1 : v1.compareTo(v2);
+							if(result != 0) {
+								return Boolean.TRUE.equals(ordering[1]) ? result : -result;
+							}
+						}
+						return 0;
+					}
+				}
+			);
+			return result;
+		}
+
+		/**
+		 * Evaluate predicate.
+		 * 
+		 * @param value
+		 * @param operator
+		 * @param operand
+		 * @return
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private static boolean matches(
+			Object value,
+			String operator,
+			Object operand
+		) {
+			if(value instanceof List) {
+				for(Object element: (List<?>)value) {
+					if(matches(element, operator, operand)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			if("isNull".equals(operator)) {
+				return value == null;
+			} else if("isNonNull".equals(operator)) {
+				return value != null;
+			} else if(value == null) {
+				return false;
+			} else if("equalTo".equals(operator)) {
+				return value.equals(operand);
+			}
+			int result = ((Comparable)value).compareTo(operand);
+			if("lessThan".equals(operator)) {
+				return result < 0;
+			} else if("lessThanOrEqualTo".equals(operator)) {
+				return result <= 0;
+			} else if("greaterThan".equals(operator)) {
+				return result > 0;
+			} else if("greaterThanOrEqualTo".equals(operator)) {
+				return result >= 0;
+			}
+			throw new UnsupportedOperationException(operator);
+		}
+	}
+
+	/**
+	 * Returns the proxy itself for fluent methods and default values
+	 * otherwise.
+	 *
+	 */
+	private static class Fluent implements InvocationHandler {
+
+		private final Class<?> type;
+
+		Fluent(
+			Class<?> type
+		) {
+			this.type = type;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public Object invoke(
+			Object proxy,
+			Method method,
+			Object[] args
+		) {
+			return method.getReturnType() == this.type ? proxy : defaultValue(method.getReturnType());
+		}
+	}
+
+	/**
+	 * JNDI factory which answers each lookup with the persistence manager
+	 * factory of the current backend. Install it with the system property
+	 * java.naming.factory.initial.
+	 *
+	 */
+	public static class ContextFactory implements InitialContextFactory {
+
+		/* (non-Javadoc)
+		 * @see javax.naming.spi.InitialContextFactory#getInitialContext(java.util.Hashtable)
+		 */
+		@Override
+		public Context getInitialContext(
+			Hashtable<?,?> environment
+		) {
+			return newProxy(
+				Context.class,
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+						Object proxy,
+						Method method,
+						Object[] args
+					) {
+						if(method.getName().startsWith("lookup")) {
+							return current.persistenceManagerFactory;
+						}
+						return defaultValue(method.getReturnType());
+					}
+				}
+			);
+		}
+	}
+
+	/**
+	 * Constructor. Makes the backend the current one of the JNDI factory.
+	 * 
+	 */
+	public InMemoryOpencrx(
+	) {
+		Bean segment = new Bean();
+		segment.path = new Path(SEGMENT_XRI);
+		this.codeSegment = newProxy(org.opencrx.kernel.code1.jmi1.Segment.class, segment);
+		this.objects.put(segment.path, this.codeSegment);
+		this.persistenceManager = newProxy(
+			PersistenceManager.class,
+			new InvocationHandler() {
+				private boolean active = false;
+				@Override
+				public Object invoke(
+					Object proxy,
+					Method method,
+					Object[] args
+				) {
+					String name = method.getName();
+					if("newQuery".equals(name) && args != null && args.length == 1 && args[0] instanceof Class) {
+						return InMemoryOpencrx.this.newQuery((Class<?>)args[0]);
+					} else if("newInstance".equals(name)) {
+						return newProxy((Class<?>)args[0], new Bean());
+					} else if("getObjectById".equals(name)) {
+						Object object = InMemoryOpencrx.this.objects.get(args[0]);
+						if(object == null) {
+							throw new JDOObjectNotFoundException(String.valueOf(args[0]));
+						}
+						return object;
+					} else if("deletePersistent".equals(name)) {
+						InMemoryOpencrx.this.delete(args[0]);
+						return null;
+					} else if("currentTransaction".equals(name)) {
+						final Object pm = proxy;
+						return newProxy(
+							javax.jdo.Transaction.class,
+							new InvocationHandler() {
+								@Override
+								public Object invoke(
+									Object proxy,
+									Method method,
+									Object[] args
+								) {
+									String name = method.getName();
+									if("begin".equals(name)) {
+										active = true;
+									} else if("commit".equals(name) || "rollback".equals(name)) {
+										active = false;
+									} else if("isActive".equals(name)) {
+										return active;
+									} else if("getPersistenceManager".equals(name)) {
+										return pm;
+									}
+									return defaultValue(method.getReturnType());
+								}
+							}
+						);
+					}
+					return defaultValue(method.getReturnType());
+				}
+			}
+		);
+		this.persistenceManagerFactory = newProxy(
+			PersistenceManagerFactory.class,
+			new InvocationHandler() {
+				@Override
+				public Object invoke(
+					Object proxy,
+					Method method,
+					Object[] args
+				) {
+					if("getPersistenceManager".equals(method.getName())) {
+						return InMemoryOpencrx.this.persistenceManager;
+					}
+					return defaultValue(method.getReturnType());
+				}
+			}
+		);
+		current = this;
+	}
+
+	/**
+	 * @return the backend created last
+	 */
+	public static InMemoryOpencrx getCurrent(
+	) {
+		return current;
+	}
+
+	/**
+	 * @return the persistence manager
+	 */
+	public PersistenceManager getPersistenceManager(
+	) {
+		return this.persistenceManager;
+	}
+
+	/**
+	 * @return the code segment
+	 */
+	public org.opencrx.kernel.code1.jmi1.Segment getCodeSegment(
+	) {
+		return this.codeSegment;
+	}
+
+	/**
+	 * Create servlet context with the given init parameters.
+	 * 
+	 * @param parameters
+	 * @return
+	 */
+	public ServletContext newServletContext(
+		final Map<String,String> parameters
+	) {
+		final Map<String,Object> attributes = new ConcurrentHashMap<String,Object>();
+		return newProxy(
+			ServletContext.class,
+			new InvocationHandler() {
+				@Override
+				public Object invoke(
+					Object proxy,
+					Method method,
+					Object[] args
+				) {
+					String name = method.getName();
+					if("getInitParameter".equals(name)) {
+						return parameters.get(args[0]);
+					} else if("getInitParameterNames".equals(name)) {
+						return Collections.enumeration(parameters.keySet());
+					} else if("getContextPath".equals(name)) {
+						return "/" + PRINCIPAL;
+					} else if("getAttribute".equals(name)) {
+						return attributes.get(args[0]);
+					} else if("getAttributeNames".equals(name)) {
+						return Collections.enumeration(attributes.keySet());
+					} else if("setAttribute".equals(name)) {
+						attributes.put((String)args[0], args[1]);
+					} else if("removeAttribute".equals(name)) {
+						attributes.remove(args[0]);
+					}
+					return defaultValue(method.getReturnType());
+				}
+			}
+		);
+	}
+
+	/**
+	 * Create query for the given JMI class.
+	 * 
+	 * @param jmiClass
+	 * @return a proxy implementing javax.jdo.Query and the cci2 query interface of the class
+	 */
+	private Object newQuery(
+		Class<?> jmiClass
+	) {
+		try {
+			Class<?> queryClass = Class.forName(
+				jmiClass.getName().replace(".jmi1.", ".cci2.") + "Query",
+				true,
+				jmiClass.getClassLoader()
+			);
+			return Proxy.newProxyInstance(
+				InMemoryOpencrx.class.getClassLoader(),
+				new Class<?>[]{javax.jdo.Query.class, queryClass},
+				new QueryHandler()
+			);
+		} catch(ClassNotFoundException e) {
+			throw new IllegalArgumentException(jmiClass.getName(), e);
+		}
+	}
+
+	/**
+	 * Add child object to a reference of the parent and make it persistent.
+	 * 
+	 * @param parent
+	 * @param reference
+	 * @param qualifier
+	 * @param child
+	 */
+	private void add(
+		Bean parent,
+		String reference,
+		String qualifier,
+		Object child
+	) {
+		Bean bean = (Bean)Proxy.getInvocationHandler(child);
+		Date now = new Date();
+		bean.path = parent.path.getDescendant(reference, qualifier);
+		bean.parent = parent;
+		bean.reference = reference;
+		bean.setAudit(now, "createdAt", "createdBy");
+		bean.setAudit(now, "modifiedAt", "modifiedBy");
+		parent.getReference(reference).put(qualifier, child);
+		this.objects.put(bean.path, child);
+	}
+
+	/**
+	 * Delete persistent object.
+	 * 
+	 * @param object
+	 */
+	private void delete(
+		Object object
+	) {
+		Bean bean = (Bean)Proxy.getInvocationHandler(object);
+		if(bean.path != null) {
+			this.objects.remove(bean.path);
+			if(bean.parent != null) {
+				bean.parent.getReference(bean.reference).remove(bean.path.getLastSegment().toClassicRepresentation());
+			}
+		}
+	}
+
+	/**
+	 * Create proxy.
+	 * 
+	 * @param type
+	 * @param handler
+	 * @return
+	 */
+	private static <T> T newProxy(
+		Class<T> type,
+		InvocationHandler handler
+	) {
+		return type.cast(
+			Proxy.newProxyInstance(
+				InMemoryOpencrx.class.getClassLoader(),
+				new Class<?>[]{type},
+				handler
+			)
+		);
+	}
+
+	/**
+	 * Get default value of a type.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	private static Object defaultValue(
+		Class<?> type
+	) {
+		if(!type.isPrimitive() || type == void.class) {
+			return null;
+		} else if(type == boolean.class) {
+			return Boolean.FALSE;
+		} else if(type == char.class) {
+			return Character.valueOf((char)0);
+		} else if(type == long.class) {
+			return Long.valueOf(0L);
+		} else if(type == float.class) {
+			return Float.valueOf(0f);
+		} else if(type == double.class) {
+			return Double.valueOf(0d);
+		} else if(type == byte.class) {
+			return Byte.valueOf((byte)0);
+		} else if(type == short.class) {
+			return Short.valueOf((short)0);
+		}
+		return Integer.valueOf(0);
+	}
+
+	/**
+	 * Convert a capitalized feature name to its Java name.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	private static String decapitalize(
+		String name
+	) {
+		return name.isEmpty() ? name : Character.toLowerCase(name.charAt(0)) + name.substring(1);
+	}
+
+}
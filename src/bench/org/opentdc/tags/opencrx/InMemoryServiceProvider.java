@@ -0,0 +1,156 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jdo.PersistenceManager;
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+import org.openmdx.base.exception.ServiceException;
+import org.opentdc.service.LocalizedTextModel;
+import org.opentdc.service.exception.DuplicateException;
+import org.opentdc.service.exception.NotFoundException;
+import org.opentdc.service.exception.ValidationException;
+import org.opentdc.tags.TagModel;
+import org.opentdc.util.LanguageCode;
+
+/**
+ * Tags service provider running against an in-memory backend. Used by the
+ * benchmarks.
+ * <p>
+ * Init parameters of the provider are taken from system properties with
+ * the prefix bench.param., e.g. -Dbench.param.tags.catalog.maxSize=10000.
+ *
+ */
+public class InMemoryServiceProvider extends OpencrxServiceProvider {
+
+	private static final String PARAM_PREFIX = "bench.param.";
+
+	private final InMemoryOpencrx backend;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param backend
+	 * @param parameters
+	 * @throws ServiceException
+	 * @throws NamingException
+	 */
+	public InMemoryServiceProvider(
+		InMemoryOpencrx backend,
+		Map<String,String> parameters
+	) throws ServiceException, NamingException {
+		super(backend.newServletContext(parameters), "TagsBenchmark");
+		this.backend = backend;
+	}
+
+	/**
+	 * Create and start provider with init parameters from system properties.
+	 * 
+	 * @return
+	 * @throws ServiceException
+	 * @throws NamingException
+	 */
+	public static InMemoryServiceProvider newInstance(
+	) throws ServiceException, NamingException {
+		if(System.getProperty(Context.INITIAL_CONTEXT_FACTORY) == null) {
+			System.setProperty(Context.INITIAL_CONTEXT_FACTORY, InMemoryOpencrx.ContextFactory.class.getName());
+		}
+		Map<String,String> parameters = new HashMap<String,String>();
+		for(String name: System.getProperties().stringPropertyNames()) {
+			if(name.startsWith(PARAM_PREFIX)) {
+				parameters.put(name.substring(PARAM_PREFIX.length()), System.getProperty(name));
+			}
+		}
+		InMemoryServiceProvider provider = new InMemoryServiceProvider(new InMemoryOpencrx(), parameters);
+		provider.start();
+		return provider;
+	}
+
+	/**
+	 * Create tags with texts in the given languages.
+	 * 
+	 * @param count
+	 * @param langs
+	 * @return the ids of the created tags
+	 * @throws DuplicateException
+	 * @throws ValidationException
+	 * @throws NotFoundException
+	 */
+	public List<String> populate(
+		int count,
+		LanguageCode... langs
+	) throws DuplicateException, ValidationException, NotFoundException {
+		List<String> ids = new ArrayList<String>();
+		for(int i = 0; i < count; i++) {
+			TagModel tag = this.create(null, new TagModel());
+			for(LanguageCode lang: langs) {
+				this.createText(null, tag.getId(), newText(lang, "tag" + lang + i));
+			}
+			ids.add(tag.getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * Create localized text.
+	 * 
+	 * @param lang
+	 * @param text
+	 * @return
+	 */
+	public static LocalizedTextModel newText(
+		LanguageCode lang,
+		String text
+	) {
+		LocalizedTextModel localizedText = new LocalizedTextModel();
+		localizedText.setLanguageCode(lang);
+		localizedText.setText(text);
+		return localizedText;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.opencrx.AbstractOpencrxServiceProvider#getPersistenceManager()
+	 */
+	@Override
+	protected PersistenceManager getPersistenceManager(
+	) {
+		return this.backend.getPersistenceManager();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.opencrx.AbstractOpencrxServiceProvider#getCodeSegment()
+	 */
+	@Override
+	protected org.opencrx.kernel.code1.jmi1.Segment getCodeSegment(
+	) {
+		return this.backend.getCodeSegment();
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencrx.kernel.code1.jmi1.CodeValueEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentdc.service.LocalizedTextModel;
+import org.opentdc.tags.SingleLangTag;
+import org.opentdc.util.LanguageCode;
+
+/**
+ * Benchmark of the mapping layer: snapshot creation from entries and the
+ * mapping of snapshots to tag texts and localized texts, with and without
+ * language filter. Run with -prof gc to see the allocation per mapped
+ * entry.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappingBenchmark {
+
+	@Param({"", "DE"})
+	public String lang;
+
+	private InMemoryServiceProvider provider;
+	private CodeValueEntry entry;
+	private TagSnapshot snapshot;
+	private LanguageCode queryLang;
+
+	@Setup
+	public void setUp(
+	) throws Exception {
+		this.provider = InMemoryServiceProvider.newInstance();
+		List<String> ids = this.provider.populate(
+			1,
+			LanguageCode.DE, LanguageCode.EN, LanguageCode.FR, LanguageCode.IT, LanguageCode.ES, LanguageCode.RM
+		);
+		this.entry = this.provider.new UnitOfWork().getEntry(ids.get(0));
+		this.snapshot = TagSnapshot.valueOf(this.entry);
+		this.queryLang = this.lang.isEmpty() ? null : LanguageCode.valueOf(this.lang);
+	}
+
+	@TearDown
+	public void tearDown(
+	) {
+		this.provider.close();
+	}
+
+	@Benchmark
+	public TagSnapshot snapshot(
+	) {
+		return TagSnapshot.valueOf(this.entry);
+	}
+
+	@Benchmark
+	public List<SingleLangTag> mapEntryToTagTexts(
+	) {
+		return this.provider.mapToTagTexts(this.entry, this.queryLang);
+	}
+
+	@Benchmark
+	public List<SingleLangTag> mapSnapshotToTagTexts(
+	) {
+		return this.provider.mapToTagTexts(this.snapshot, this.queryLang);
+	}
+
+	@Benchmark
+	public List<LocalizedTextModel> mapSnapshotToLocalizedTexts(
+	) {
+		return this.provider.mapToLocalizedTexts(this.snapshot, this.queryLang);
+	}
+
+}
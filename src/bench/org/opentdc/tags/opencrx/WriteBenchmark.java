@@ -0,0 +1,97 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentdc.service.LocalizedTextModel;
+import org.opentdc.tags.TagModel;
+import org.opentdc.util.LanguageCode;
+
+/**
+ * Benchmark of the write paths create, createText and updateText.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteBenchmark {
+
+	@Param({"2000"})
+	public int tags;
+
+	private InMemoryServiceProvider provider;
+	private String[] ids;
+	private int next = 0;
+
+	@Setup
+	public void setUp(
+	) throws Exception {
+		this.provider = InMemoryServiceProvider.newInstance();
+		List<String> ids = this.provider.populate(this.tags, LanguageCode.DE);
+		this.ids = ids.toArray(new String[ids.size()]);
+	}
+
+	@TearDown
+	public void tearDown(
+	) {
+		this.provider.close();
+	}
+
+	@Benchmark
+	public LocalizedTextModel createWithText(
+	) throws Exception {
+		TagModel tag = this.provider.create(null, new TagModel());
+		return this.provider.createText(null, tag.getId(), InMemoryServiceProvider.newText(LanguageCode.DE, "created"));
+	}
+
+	@Benchmark
+	public LocalizedTextModel updateText(
+	) throws Exception {
+		this.next = (this.next + 1) % this.ids.length;
+		return this.provider.updateText(
+			null,
+			this.ids[this.next],
+			LanguageCode.DE.name(),
+			InMemoryServiceProvider.newText(LanguageCode.DE, "updated" + this.next)
+		);
+	}
+
+}
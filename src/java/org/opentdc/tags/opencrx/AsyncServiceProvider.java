@@ -0,0 +1,475 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+
+import org.opentdc.service.LocalizedTextModel;
+import org.opentdc.tags.ServiceProvider;
+import org.opentdc.tags.SingleLangTag;
+import org.opentdc.tags.TagModel;
+
+/**
+ * Asynchronous facade of a tags service provider. Calls are executed on a
+ * dedicated bounded thread pool so that request threads are not blocked
+ * while waiting for the backend. Calls are rejected if the pool and its
+ * queue are saturated. Calls which are still waiting in the queue when
+ * their timeout expires are cancelled and removed from the queue. Calls
+ * which have started are never interrupted and run to completion, i.e.
+ * a write is either not executed at all or executed completely.
+ * <p>
+ * The HttpServletRequest passed to write operations is handed over to the
+ * worker thread as is. It must not be accessed by the provider after the
+ * request thread has been released.
+ *
+ */
+public class AsyncServiceProvider {
+
+	private final ServiceProvider provider;
+	private final ThreadPoolExecutor executor;
+	private final ScheduledExecutorService timer;
+	private final long defaultTimeoutMillis;
+	private final ConcurrentMap<String,Long> timeouts = new ConcurrentHashMap<String,Long>();
+
+	/**
+	 * Task which enforces its timeout while queued and optionally resumes
+	 * an asynchronous response on completion.
+	 *
+	 */
+	private static class Task<T> extends FutureTask<T> {
+
+		private final AsyncResponse asyncResponse;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private volatile ScheduledFuture<?> timeout = null;
+
+		Task(
+			Callable<T> callable,
+			AsyncResponse asyncResponse
+		) {
+			super(callable);
+			this.asyncResponse = asyncResponse;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.FutureTask#run()
+		 */
+		@Override
+		public void run(
+		) {
+			if(this.started.compareAndSet(false, true)) {
+				super.run();
+			}
+		}
+
+		/**
+		 * Cancel the task if it has not started yet.
+		 * 
+		 * @return true if the task was cancelled
+		 */
+		boolean cancelIfQueued(
+		) {
+			return this.started.compareAndSet(false, true) && this.cancel(false);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.FutureTask#done()
+		 */
+		@Override
+		protected void done(
+		) {
+			ScheduledFuture<?> timeout = this.timeout;
+			if(timeout != null) {
+				timeout.cancel(false);
+			}
+			if(this.asyncResponse != null) {
+				if(this.isCancelled()) {
+					this.asyncResponse.resume(new ServiceUnavailableException("Request timed out"));
+				} else {
+					try {
+						this.asyncResponse.resume(this.get());
+					} catch(ExecutionException e) {
+						this.asyncResponse.resume(e.getCause());
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+						this.asyncResponse.resume(e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param provider the provider to delegate to
+	 * @param threads number of worker threads
+	 * @param queueCapacity maximum number of waiting calls
+	 * @param defaultTimeoutMillis queue timeout of calls in milliseconds. No timeout if <= 0.
+	 */
+	public AsyncServiceProvider(
+		ServiceProvider provider,
+		int threads,
+		int queueCapacity,
+		long defaultTimeoutMillis
+	) {
+		this.provider = provider;
+		this.defaultTimeoutMillis = defaultTimeoutMillis;
+		this.executor = new ThreadPoolExecutor(
+			threads,
+			threads,
+			60L,
+			TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(queueCapacity),
+			newThreadFactory("tags-async-"),
+			new ThreadPoolExecutor.AbortPolicy()
+		);
+		this.timer = Executors.newSingleThreadScheduledExecutor(newThreadFactory("tags-async-timer-"));
+	}
+
+	/**
+	 * Create factory for daemon threads.
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	private static ThreadFactory newThreadFactory(
+		final String prefix
+	) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(
+				Runnable runnable
+			) {
+				Thread thread = new Thread(runnable, prefix + this.count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Set the timeout of an operation.
+	 * 
+	 * @param operation
+	 * @param timeoutMillis queue timeout in milliseconds. No timeout if <= 0.
+	 */
+	public void setTimeout(
+		String operation,
+		long timeoutMillis
+	) {
+		this.timeouts.put(operation, timeoutMillis);
+	}
+
+	/**
+	 * Get the timeout of an operation.
+	 * 
+	 * @param operation
+	 * @return
+	 */
+	public long getTimeout(
+		String operation
+	) {
+		Long timeout = this.timeouts.get(operation);
+		return timeout == null ? this.defaultTimeoutMillis : timeout.longValue();
+	}
+
+	/**
+	 * Submit call.
+	 * 
+	 * @param operation name of the operation used to lookup the timeout
+	 * @param callable
+	 * @return the future of the call. It is cancelled if the call is still queued when it times out.
+	 * @throws RejectedExecutionException if the executor is saturated
+	 */
+	public <T> Future<T> submit(
+		String operation,
+		Callable<T> callable
+	) throws RejectedExecutionException {
+		return this.execute(operation, callable, null);
+	}
+
+	/**
+	 * Submit call and resume the asynchronous response with its result.
+	 * The response is resumed with a ServiceUnavailableException if the
+	 * executor is saturated or the call is still queued when it times out.
+	 * 
+	 * @param operation name of the operation used to lookup the timeout
+	 * @param callable
+	 * @param asyncResponse
+	 */
+	public <T> void submit(
+		String operation,
+		Callable<T> callable,
+		AsyncResponse asyncResponse
+	) {
+		try {
+			this.execute(operation, callable, asyncResponse);
+		} catch(RejectedExecutionException e) {
+			asyncResponse.resume(new ServiceUnavailableException("Too many requests"));
+		}
+	}
+
+	/**
+	 * Execute task and schedule its timeout. On timeout the task is
+	 * cancelled and removed from the queue unless it has started.
+	 * 
+	 * @param operation
+	 * @param callable
+	 * @param asyncResponse may be null
+	 * @return
+	 * @throws RejectedExecutionException
+	 */
+	private <T> Future<T> execute(
+		String operation,
+		Callable<T> callable,
+		AsyncResponse asyncResponse
+	) throws RejectedExecutionException {
+		final Task<T> task = new Task<T>(callable, asyncResponse);
+		this.executor.execute(task);
+		long timeoutMillis = this.getTimeout(operation);
+		if(timeoutMillis > 0 && !task.isDone()) {
+			task.timeout = this.timer.schedule(
+				new Runnable() {
+					@Override
+					public void run() {
+						if(task.cancelIfQueued()) {
+							executor.remove(task);
+						}
+					}
+				},
+				timeoutMillis,
+				TimeUnit.MILLISECONDS
+			);
+			if(task.isDone()) {
+				task.timeout.cancel(false);
+			}
+		}
+		return task;
+	}
+
+	/**
+	 * @return number of calls waiting for a worker thread
+	 */
+	public int getQueueSize() {
+		return this.executor.getQueue().size();
+	}
+
+	/**
+	 * @return number of calls being executed
+	 */
+	public int getActiveCount() {
+		return this.executor.getActiveCount();
+	}
+
+	/**
+	 * Shutdown the executor. Running calls are completed.
+	 * 
+	 */
+	public void shutdown(
+	) {
+		this.executor.shutdown();
+		this.timer.shutdownNow();
+	}
+
+	/**
+	 * @see ServiceProvider#list(String, String, int, int)
+	 */
+	public Future<List<SingleLangTag>> list(
+		final String query,
+		final String queryType,
+		final int position,
+		final int size
+	) {
+		return this.submit("list", new Callable<List<SingleLangTag>>() {
+			@Override
+			public List<SingleLangTag> call() throws Exception {
+				return provider.list(query, queryType, position, size);
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#create(HttpServletRequest, TagModel)
+	 */
+	public Future<TagModel> create(
+		final HttpServletRequest request,
+		final TagModel tag
+	) {
+		return this.submit("create", new Callable<TagModel>() {
+			@Override
+			public TagModel call() throws Exception {
+				return provider.create(request, tag);
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#read(String)
+	 */
+	public Future<TagModel> read(
+		final String id
+	) {
+		return this.submit("read", new Callable<TagModel>() {
+			@Override
+			public TagModel call() throws Exception {
+				return provider.read(id);
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#update(HttpServletRequest, String, TagModel)
+	 */
+	public Future<TagModel> update(
+		final HttpServletRequest request,
+		final String id,
+		final TagModel tag
+	) {
+		return this.submit("update", new Callable<TagModel>() {
+			@Override
+			public TagModel call() throws Exception {
+				return provider.update(request, id, tag);
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#delete(String)
+	 */
+	public Future<Void> delete(
+		final String id
+	) {
+		return this.submit("delete", new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				provider.delete(id);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#listTexts(String, String, String, int, int)
+	 */
+	public Future<List<LocalizedTextModel>> listTexts(
+		final String tid,
+		final String queryType,
+		final String query,
+		final int position,
+		final int size
+	) {
+		return this.submit("listTexts", new Callable<List<LocalizedTextModel>>() {
+			@Override
+			public List<LocalizedTextModel> call() throws Exception {
+				return provider.listTexts(tid, queryType, query, position, size);
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#createText(HttpServletRequest, String, LocalizedTextModel)
+	 */
+	public Future<LocalizedTextModel> createText(
+		final HttpServletRequest request,
+		final String tid,
+		final LocalizedTextModel tag
+	) {
+		return this.submit("createText", new Callable<LocalizedTextModel>() {
+			@Override
+			public LocalizedTextModel call() throws Exception {
+				return provider.createText(request, tid, tag);
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#readText(String, String)
+	 */
+	public Future<LocalizedTextModel> readText(
+		final String tid,
+		final String lid
+	) {
+		return this.submit("readText", new Callable<LocalizedTextModel>() {
+			@Override
+			public LocalizedTextModel call() throws Exception {
+				return provider.readText(tid, lid);
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#updateText(HttpServletRequest, String, String, LocalizedTextModel)
+	 */
+	public Future<LocalizedTextModel> updateText(
+		final HttpServletRequest request,
+		final String tid,
+		final String id,
+		final LocalizedTextModel tag
+	) {
+		return this.submit("updateText", new Callable<LocalizedTextModel>() {
+			@Override
+			public LocalizedTextModel call() throws Exception {
+				return provider.updateText(request, tid, id, tag);
+			}
+		});
+	}
+
+	/**
+	 * @see ServiceProvider#deleteText(String, String)
+	 */
+	public Future<Void> deleteText(
+		final String tid,
+		final String id
+	) {
+		return this.submit("deleteText", new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				provider.deleteText(tid, id);
+				return null;
+			}
+		});
+	}
+
+}
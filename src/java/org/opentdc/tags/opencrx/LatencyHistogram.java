@@ -0,0 +1,157 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values. Values are counted in
+ * log-linear buckets with four sub-buckets per power of two, i.e. a
+ * relative precision of 25%. Recording is a few atomic increments and
+ * does not allocate.
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = 62 * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalValue = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	/**
+	 * Get bucket of value.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	static int bucketOf(
+		long value
+	) {
+		if(value < SUB_BUCKETS) {
+			return (int)Math.max(value, 0L);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)((value >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+		return (exponent - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Get highest value of bucket.
+	 * 
+	 * @param bucket
+	 * @return
+	 */
+	static long highestValueOf(
+		int bucket
+	) {
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + 1;
+		long lowest = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+		return lowest + (1L << (exponent - 2)) - 1;
+	}
+
+	/**
+	 * Record value.
+	 * 
+	 * @param value
+	 */
+	public void record(
+		long value
+	) {
+		this.counts.incrementAndGet(bucketOf(value));
+		this.totalCount.incrementAndGet();
+		this.totalValue.addAndGet(value);
+		long max = this.maxValue.get();
+		while(value > max && !this.maxValue.compareAndSet(max, value)) {
+			max = this.maxValue.get();
+		}
+	}
+
+	/**
+	 * Get value at percentile.
+	 * 
+	 * @param percentile between 0.0 and 100.0
+	 * @return the highest value of the bucket containing the percentile
+	 */
+	public long getValueAtPercentile(
+		double percentile
+	) {
+		long count = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			count += this.counts.get(i);
+		}
+		long target = Math.max(1L, (long)Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if(seen >= target) {
+				return Math.min(highestValueOf(i), this.maxValue.get());
+			}
+		}
+		return this.maxValue.get();
+	}
+
+	/**
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return this.totalCount.get();
+	}
+
+	/**
+	 * @return the mean of the recorded values
+	 */
+	public double getMean() {
+		long count = this.totalCount.get();
+		return count == 0 ? 0.0 : (double)this.totalValue.get() / count;
+	}
+
+	/**
+	 * @return the maximum recorded value
+	 */
+	public long getMax() {
+		return this.maxValue.get();
+	}
+
+	/**
+	 * Reset histogram.
+	 * 
+	 */
+	public void reset(
+	) {
+		for(int i = 0; i < BUCKETS; i++) {
+			this.counts.set(i, 0L);
+		}
+		this.totalCount.set(0L);
+		this.totalValue.set(0L);
+		this.maxValue.set(0L);
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * Continuation point of a keyset paged tag list or change feed. Entries are
+ * ordered by a timestamp (createdAt for lists, modifiedAt for changes) and
+ * entries with equal timestamps by id. The cursor holds the timestamp and
+ * id of the last returned entry and the number of rows already returned
+ * for this entry. The size of the cursor does not depend on the number of
+ * entries with equal timestamps.
+ *
+ */
+public class ListCursor {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final long time;
+	private final String id;
+	private final int consumedRows;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param time
+	 * @param id
+	 * @param consumedRows
+	 */
+	public ListCursor(
+		long time,
+		String id,
+		int consumedRows
+	) {
+		this.time = time;
+		this.id = id;
+		this.consumedRows = consumedRows;
+	}
+
+	/**
+	 * @return the timestamp
+	 */
+	public long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * @return the timestamp as date
+	 */
+	public Date getTimeAsDate() {
+		return new Date(this.time);
+	}
+
+	/**
+	 * @return the id of the last returned entry
+	 */
+	public String getId() {
+		return this.id;
+	}
+
+	/**
+	 * @return number of rows already returned for the last returned entry
+	 */
+	public int getConsumedRows() {
+		return this.consumedRows;
+	}
+
+	/**
+	 * Compare the position of an entry with the cursor.
+	 * 
+	 * @param time
+	 * @param id
+	 * @return a negative value, zero or a positive value if the entry is before, at or after the cursor
+	 */
+	public int compareTo(
+		long time,
+		String id
+	) {
+		if(time != this.time) {
+			return time < this.time ? -1 : 1;
+		}
+		return id.compareTo(this.id);
+	}
+
+	/**
+	 * Get number of rows of an entry already returned.
+	 * 
+	 * @param time
+	 * @param id
+	 * @param rows number of rows of the entry
+	 * @return
+	 */
+	public int getConsumedRows(
+		long time,
+		String id,
+		int rows
+	) {
+		int position = this.compareTo(time, id);
+		return position < 0 ? rows : position == 0 ? Math.min(this.consumedRows, rows) : 0;
+	}
+
+	/**
+	 * Encode cursor as opaque token.
+	 * 
+	 * @return
+	 */
+	public String encode(
+	) {
+		String value = this.time + "|" + this.consumedRows + "|" + this.id;
+		return DatatypeConverter.printHexBinary(value.getBytes(UTF8));
+	}
+
+	/**
+	 * Decode cursor from token.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws ValidationException if the token is not valid
+	 */
+	public static ListCursor decode(
+		String token
+	) throws ValidationException {
+		try {
+			String value = new String(DatatypeConverter.parseHexBinary(token), UTF8);
+			int pos1 = value.indexOf('|');
+			int pos2 = value.indexOf('|', pos1 + 1);
+			int consumedRows = Integer.parseInt(value.substring(pos1 + 1, pos2));
+			if(consumedRows < 0) {
+				throw new IllegalArgumentException();
+			}
+			return new ListCursor(
+				Long.parseLong(value.substring(0, pos1)),
+				value.substring(pos2 + 1),
+				consumedRows
+			);
+		} catch(Exception e) {
+			throw new ValidationException("Invalid cursor " + token);
+		}
+	}
+
+}
@@ -23,15 +23,46 @@
  */
 package org.opentdc.tags.opencrx;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 // import java.util.logging.Logger;
 
 import javax.jdo.JDOHelper;
+import javax.jdo.JDOOptimisticVerificationException;
 import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
 import javax.naming.NamingException;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -42,6 +73,8 @@ import org.opencrx.kernel.code1.jmi1.CodeValueContainer;
 import org.opencrx.kernel.code1.jmi1.CodeValueEntry;
 import org.opencrx.kernel.utils.Utils;
 import org.openmdx.base.exception.ServiceException;
+import org.openmdx.base.naming.Path;
+import org.openmdx.kernel.exception.BasicException;
 import org.opentdc.opencrx.AbstractOpencrxServiceProvider;
 import org.opentdc.service.LocalizedTextModel;
 import org.opentdc.service.exception.DuplicateException;
@@ -53,6 +86,9 @@ import org.opentdc.tags.SingleLangTag;
 import org.opentdc.tags.TagModel;
 import org.opentdc.util.LanguageCode;
 
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
 /**
  * Tags service for openCRX.
  *
@@ -61,6 +97,214 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 	
 	// private static final Logger logger = Logger.getLogger(OpencrxServiceProvider.class.getName());
 
+	private static final String TAGS_CONTAINER_NAME = "Tags";
+	private static final int MAX_FETCH_SIZE = 500;
+	private static final Gson GSON = new Gson();
+
+	/**
+	 * Languages and their locale indexes. LanguageCode.values() clones the
+	 * array on each call.
+	 */
+	private static final LanguageCode[] LANGUAGES = LanguageCode.values();
+	private static final int[] LOCALE_INDEXES = new int[LANGUAGES.length];
+	static {
+		for(int i = 0; i < LANGUAGES.length; i++) {
+			LOCALE_INDEXES[i] = localeIndexOf(LANGUAGES[i]);
+		}
+	}
+
+	/**
+	 * Orders snapshots by id. Used to order entries with equal timestamps.
+	 */
+	private static final Comparator<TagSnapshot> TAG_ID_ORDER = new Comparator<TagSnapshot>() {
+		@Override
+		public int compare(
+			TagSnapshot s1,
+			TagSnapshot s2
+		) {
+			return s1.getId().compareTo(s2.getId());
+		}
+	};
+
+	private static final String CATALOG_MAX_SIZE_PARAM = "tags.catalog.maxSize";
+	private static final String CATALOG_TTL_PARAM = "tags.catalog.ttl";
+	private static final String BATCH_CHUNK_SIZE_PARAM = "tags.batch.chunkSize";
+	private static final String SEARCH_REFRESH_PARAM = "tags.search.refresh";
+	private static final String LIST_VERSION_TTL_PARAM = "tags.listVersion.ttl";
+	private static final String WARMUP_PARAM = "tags.warmup";
+	private static final String LANGUAGE_INDEX_PARAM = "tags.list.languageIndex";
+	private static final String RETRY_MAX_PARAM = "tags.retry.max";
+	private static final String RETRY_BACKOFF_PARAM = "tags.retry.backoff";
+	private static final String CHANGES_LAG_PARAM = "tags.changes.lag";
+	private static final String PURGE_RETENTION_PARAM = "tags.purge.retention";
+	private static final String PURGE_INTERVAL_PARAM = "tags.purge.interval";
+	private static final String PURGE_BATCH_SIZE_PARAM = "tags.purge.batchSize";
+	private static final String PURGE_PAUSE_PARAM = "tags.purge.pause";
+	static final String CONTEXT_ATTRIBUTE_PREFIX = OpencrxServiceProvider.class.getName() + ".";
+
+	private volatile Path tagsContainerIdentity = null;
+	private final Object tagsContainerLock = new Object();
+	private final TagCatalog tagCatalog;
+	private final TagsMetrics metrics = new TagsMetrics();
+	private final int batchChunkSize;
+	private final long searchIndexRefreshMillis;
+	private volatile TagSearchIndex searchIndex = null;
+	private final ExecutorService searchIndexExecutor;
+	private final AtomicReference<Future<TagSearchIndex>> searchIndexBuild = new AtomicReference<Future<TagSearchIndex>>();
+	private final AtomicLong searchIndexGeneration = new AtomicLong();
+	private final Object searchIndexWriteLock = new Object();
+	private List<IndexWrite> pendingIndexWrites = null;
+	private final long listVersionTtlMillis;
+	private volatile ListVersion listVersion = null;
+	private final boolean languageIndexEnabled;
+	private final int maxRetries;
+	private final long retryBackoffMillis;
+	private final long changesLagMillis;
+	private final ConcurrentMap<String,FutureTask<TagSnapshot>> tagLoads = new ConcurrentHashMap<String,FutureTask<TagSnapshot>>();
+	private final String threadNameSuffix;
+	private final boolean warmupEnabled;
+	private final long purgeRetentionMillis;
+	private final int purgeBatchSize;
+	private final long purgePauseMillis;
+	private final long purgeIntervalMillis;
+	private final ScheduledExecutorService purgeExecutor;
+	private final AtomicBoolean started = new AtomicBoolean();
+	private volatile boolean closed = false;
+
+	/**
+	 * Write to the search index, recorded while the index is rebuilt.
+	 *
+	 */
+	private static class IndexWrite {
+
+		final String id;
+		final TagSnapshot snapshot;
+
+		IndexWrite(
+			String id,
+			TagSnapshot snapshot
+		) {
+			this.id = id;
+			this.snapshot = snapshot;
+		}
+
+		/**
+		 * Apply write to index.
+		 * 
+		 * @param index
+		 */
+		void applyTo(
+			TagSearchIndex index
+		) {
+			if(this.snapshot == null) {
+				index.remove(this.id);
+			} else {
+				index.update(this.snapshot, LOCALE_INDEXES);
+			}
+		}
+	}
+
+	/**
+	 * Version of the tag list with the time it was computed.
+	 *
+	 */
+	private static class ListVersion {
+		
+		final String version;
+		final long computedAt;
+		
+		ListVersion(
+			String version,
+			long computedAt
+		) {
+			this.version = version;
+			this.computedAt = computedAt;
+		}
+	}
+
+	/**
+	 * Unit of work of a single call. Memoizes the persistence manager, the
+	 * code segment, the tags container and loaded entries so that nested
+	 * steps of a call do not resolve them again. A unit of work must not
+	 * be shared between calls or threads.
+	 *
+	 */
+	protected class UnitOfWork {
+
+		private PersistenceManager pm = null;
+		private org.opencrx.kernel.code1.jmi1.Segment codeSegment = null;
+		private CodeValueContainer tagsContainer = null;
+		private final Map<String,CodeValueEntry> entries = new HashMap<String,CodeValueEntry>();
+
+		/**
+		 * @return the persistence manager
+		 */
+		public PersistenceManager getPersistenceManager(
+		) {
+			if(this.pm == null) {
+				this.pm = OpencrxServiceProvider.this.getPersistenceManager();
+			}
+			return this.pm;
+		}
+
+		/**
+		 * @return the code segment
+		 */
+		public org.opencrx.kernel.code1.jmi1.Segment getCodeSegment(
+		) {
+			if(this.codeSegment == null) {
+				this.codeSegment = OpencrxServiceProvider.this.getCodeSegment();
+			}
+			return this.codeSegment;
+		}
+
+		/**
+		 * @return the tags container
+		 */
+		public CodeValueContainer getTagsContainer(
+		) {
+			if(this.tagsContainer == null) {
+				this.tagsContainer = OpencrxServiceProvider.this.findTagsContainer(this.getCodeSegment());
+			}
+			return this.tagsContainer;
+		}
+
+		/**
+		 * Get entry.
+		 * 
+		 * @param id
+		 * @return the entry or null if it does not exist
+		 */
+		public CodeValueEntry getEntry(
+			String id
+		) {
+			if(this.entries.containsKey(id)) {
+				return this.entries.get(id);
+			}
+			CodeValueEntry codeValueEntry = OpencrxServiceProvider.this.lookupEntry(this.getTagsContainer(), id);
+			this.entries.put(id, codeValueEntry);
+			return codeValueEntry;
+		}
+
+		/**
+		 * Get entry which is not deleted.
+		 * 
+		 * @param id
+		 * @return
+		 * @throws NotFoundException if the entry does not exist or is deleted
+		 */
+		public CodeValueEntry getValidEntry(
+			String id
+		) throws NotFoundException {
+			CodeValueEntry codeValueEntry = this.getEntry(id);
+			if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis())) {
+				throw new org.opentdc.service.exception.NotFoundException(id);				
+			}
+			return codeValueEntry;
+		}
+
+	}
+
 	/**
 	 * Constructor.
 	 * 
@@ -74,6 +318,188 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		String prefix
 	) throws ServiceException, NamingException {
 		super(context, prefix);
+		int catalogMaxSize = getIntParameter(context, CATALOG_MAX_SIZE_PARAM, 0);
+		this.tagCatalog = catalogMaxSize > 0
+			? new TagCatalog(catalogMaxSize, 1000L * getIntParameter(context, CATALOG_TTL_PARAM, 300))
+			: null;
+		this.batchChunkSize = Math.max(1, getIntParameter(context, BATCH_CHUNK_SIZE_PARAM, 100));
+		this.searchIndexRefreshMillis = 1000L * getIntParameter(context, SEARCH_REFRESH_PARAM, 300);
+		this.searchIndexExecutor = Executors.newSingleThreadExecutor(newDaemonThreadFactory("tags-search-" + prefix));
+		this.listVersionTtlMillis = 1000L * getIntParameter(context, LIST_VERSION_TTL_PARAM, 1);
+		// Off by default: the index sees writes of other nodes only after tags.search.refresh
+		this.languageIndexEnabled = getIntParameter(context, LANGUAGE_INDEX_PARAM, 0) > 0;
+		this.maxRetries = Math.max(0, getIntParameter(context, RETRY_MAX_PARAM, 3));
+		this.retryBackoffMillis = Math.max(1, getIntParameter(context, RETRY_BACKOFF_PARAM, 20));
+		// Must exceed the longest time between the modifiedAt of a change and its commit, including clock skew
+		this.changesLagMillis = Math.max(0, getIntParameter(context, CHANGES_LAG_PARAM, 5000));
+		this.threadNameSuffix = prefix;
+		this.warmupEnabled = getIntParameter(context, WARMUP_PARAM, 0) > 0;
+		// Purge runs on each node which sets tags.purge.retention. In a cluster set it on one node only
+		this.purgeRetentionMillis = 86400000L * getIntParameter(context, PURGE_RETENTION_PARAM, 0);
+		this.purgeBatchSize = Math.max(1, getIntParameter(context, PURGE_BATCH_SIZE_PARAM, 50));
+		this.purgePauseMillis = Math.max(0, getIntParameter(context, PURGE_PAUSE_PARAM, 100));
+		this.purgeIntervalMillis = 1000L * Math.max(1, getIntParameter(context, PURGE_INTERVAL_PARAM, 3600));
+		this.purgeExecutor = this.purgeRetentionMillis > 0
+			? Executors.newSingleThreadScheduledExecutor(newDaemonThreadFactory("tags-purge-" + prefix))
+			: null;
+		this.metrics.setReady(!this.warmupEnabled);
+		this.metrics.register(prefix);
+		context.setAttribute(CONTEXT_ATTRIBUTE_PREFIX + prefix, this);
+	}
+
+	/**
+	 * Start the background work of the provider: the warm-up if enabled
+	 * and the scheduled purge if a retention is configured. It is not
+	 * started by the constructor so that overridden methods do not run
+	 * before a subclass is initialized. Called by
+	 * TagsServiceContextListener when the servlet context is initialized.
+	 * Providers created later must be started by their creator. Calls
+	 * after the first one are ignored.
+	 * 
+	 */
+	public void start(
+	) {
+		if(this.closed || !this.started.compareAndSet(false, true)) {
+			return;
+		}
+		if(this.warmupEnabled) {
+			Thread warmup = new Thread(
+				new Runnable() {
+					@Override
+					public void run() {
+						warmup();
+					}
+				},
+				"tags-warmup-" + this.threadNameSuffix
+			);
+			warmup.setDaemon(true);
+			warmup.start();
+		}
+		if(this.purgeExecutor != null) {
+			this.purgeExecutor.scheduleWithFixedDelay(
+				new Runnable() {
+					@Override
+					public void run() {
+						try {
+							purge(purgeRetentionMillis, purgeBatchSize, purgePauseMillis);
+						} catch(Exception e) {
+							new ServiceException(e).log();
+						}
+					}
+				},
+				this.purgeIntervalMillis,
+				this.purgeIntervalMillis,
+				TimeUnit.MILLISECONDS
+			);
+		}
+	}
+
+	/**
+	 * Close the provider: stop the scheduled purge and the search index
+	 * builds and unregister the metrics. A running purge stops after its
+	 * current batch, a running index build completes. Called by
+	 * TagsServiceContextListener when the servlet context is destroyed.
+	 * 
+	 */
+	public void close(
+	) {
+		this.closed = true;
+		if(this.purgeExecutor != null) {
+			this.purgeExecutor.shutdown();
+		}
+		this.searchIndexExecutor.shutdown();
+		this.metrics.unregister();
+	}
+
+	/**
+	 * Warm up the provider: resolve the tags container, load all active
+	 * entries into the tag catalog, run the mapping paths and build the
+	 * search index. Entries are evicted from the persistence manager once
+	 * they are mapped. The provider is ready when warm-up completes, also if
+	 * it fails.
+	 * 
+	 */
+	protected void warmup(
+	) {
+		long started = this.metrics.start();
+		try {
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			Query entryQuery = pm.newQuery(CodeValueEntry.class);
+			CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)entryQuery;
+			codeValueEntryQuery.orderByCreatedAt().ascending();
+			codeValueEntryQuery.validTo().isNull();
+			this.setFetchSize(entryQuery, MAX_FETCH_SIZE);
+			for(CodeValueEntry codeValueEntry: this.queryEntries(unitOfWork.getTagsContainer(), codeValueEntryQuery)) {
+				TagSnapshot snapshot = this.cacheTag(codeValueEntry);
+				this.mapToTag(snapshot);
+				this.mapToLocalizedTexts(snapshot, null);
+				this.mapToTagTexts(snapshot, null);
+				pm.evict(codeValueEntry);
+			}
+			this.getSearchIndex();
+		} catch(Exception e) {
+			new ServiceException(e).log();
+		} finally {
+			this.metrics.setReady(true);
+			this.metrics.record("warmup", started);
+		}
+	}
+
+	/**
+	 * Return true if the provider is ready to serve requests, i.e. the
+	 * warm-up is completed or disabled. Published as attribute Ready of
+	 * the metrics MBean for load balancer health checks.
+	 * 
+	 * @return
+	 */
+	public boolean isReady(
+	) {
+		return this.metrics.isReady();
+	}
+
+	/**
+	 * Get integer init parameter.
+	 * 
+	 * @param context
+	 * @param name
+	 * @param defaultValue
+	 * @return
+	 */
+	protected static int getIntParameter(
+		ServletContext context,
+		String name,
+		int defaultValue
+	) {
+		String value = context == null ? null : context.getInitParameter(name);
+		if(value != null && !value.trim().isEmpty()) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch(NumberFormatException e) {
+				new ServiceException(e).log();
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Get the metrics.
+	 * 
+	 * @return
+	 */
+	public TagsMetrics getMetrics(
+	) {
+		return this.metrics;
+	}
+
+	/**
+	 * Get the tag catalog.
+	 * 
+	 * @return the catalog or null if caching is disabled
+	 */
+	public TagCatalog getTagCatalog(
+	) {
+		return this.tagCatalog;
 	}
 
 	/**
@@ -82,7 +508,7 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 	 * @param lang
 	 * @return
 	 */
-	protected int getLocaleIndex(
+	protected static int localeIndexOf(
 		LanguageCode lang
 	) {
 		switch(lang) {
@@ -103,6 +529,18 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		}
 	}
 
+	/**
+	 * Map language to locale.
+	 * 
+	 * @param lang
+	 * @return
+	 */
+	protected int getLocaleIndex(
+		LanguageCode lang
+	) {
+		return LOCALE_INDEXES[lang.ordinal()];
+	}
+
 	/**
 	 * Map code value entry to tag texts.
 	 * 
@@ -114,17 +552,31 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		CodeValueEntry entry,
 		LanguageCode queryLang
 	) {
-		List<SingleLangTag> tagTexts = new ArrayList<SingleLangTag>();
-		for(LanguageCode lang: LanguageCode.values()) {
+		return this.mapToTagTexts(TagSnapshot.valueOf(entry), queryLang);
+	}
+
+	/**
+	 * Map tag snapshot to tag texts.
+	 * 
+	 * @param snapshot
+	 * @param lang
+	 * @return
+	 */
+	protected List<SingleLangTag> mapToTagTexts(
+		TagSnapshot snapshot,
+		LanguageCode queryLang
+	) {
+		List<SingleLangTag> tagTexts = new ArrayList<SingleLangTag>(queryLang == null ? LANGUAGES.length : 1);
+		for(int i = 0; i < LANGUAGES.length; i++) {
+			LanguageCode lang = LANGUAGES[i];
 			if(queryLang == null || queryLang == lang) {
-				int localeIndex = this.getLocaleIndex(lang);
-				List<String> texts = entry.getShortText();
-				if(localeIndex < texts.size() && !texts.get(localeIndex).isEmpty()) {
+				String text = snapshot.getShortText(LOCALE_INDEXES[i]);
+				if(!text.isEmpty()) {
 					SingleLangTag tagText = new SingleLangTag();
 					tagText.setLanguageCode(lang);
 					tagText.setLocalizedTextId(lang.name());
-					tagText.setTagId(entry.refGetPath().getLastSegment().toClassicRepresentation());
-					tagText.setText(texts.get(localeIndex));
+					tagText.setTagId(snapshot.getId());
+					tagText.setText(text);
 					tagTexts.add(tagText);
 				}
 			}
@@ -142,20 +594,40 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		CodeValueEntry entry,
 		LanguageCode queryLang
 	) {
-		List<LocalizedTextModel> localizedTexts = new ArrayList<LocalizedTextModel>();
-		for(LanguageCode lang: LanguageCode.values()) {
+		return this.mapToLocalizedTexts(TagSnapshot.valueOf(entry), queryLang);
+	}
+
+	/**
+	 * Map tag snapshot to localized texts.
+	 * 
+	 * @param snapshot
+	 * @return
+	 */
+	protected List<LocalizedTextModel> mapToLocalizedTexts(
+		TagSnapshot snapshot,
+		LanguageCode queryLang
+	) {
+		List<LocalizedTextModel> localizedTexts = new ArrayList<LocalizedTextModel>(queryLang == null ? LANGUAGES.length : 1);
+		// The dates are shared by the texts of the tag
+		Date createdAt = null;
+		Date modifiedAt = null;
+		for(int i = 0; i < LANGUAGES.length; i++) {
+			LanguageCode lang = LANGUAGES[i];
 			if(queryLang == null || queryLang == lang) {			
-				int localeIndex = this.getLocaleIndex(lang);
-				List<String> texts = entry.getShortText();
-				if(localeIndex < texts.size() && !texts.get(localeIndex).isEmpty()) {
+				String text = snapshot.getShortText(LOCALE_INDEXES[i]);
+				if(!text.isEmpty()) {
+					if(createdAt == null) {
+						createdAt = snapshot.getCreatedAt();
+						modifiedAt = snapshot.getModifiedAt();
+					}
 					LocalizedTextModel localizedText = new LocalizedTextModel();
-					localizedText.setCreatedAt(entry.getCreatedAt());
-					localizedText.setCreatedBy(entry.getCreatedBy().get(0));
-					localizedText.setModifiedAt(entry.getModifiedAt());
-					localizedText.setModifiedBy(entry.getModifiedBy().get(0));
+					localizedText.setCreatedAt(createdAt);
+					localizedText.setCreatedBy(snapshot.getCreatedBy());
+					localizedText.setModifiedAt(modifiedAt);
+					localizedText.setModifiedBy(snapshot.getModifiedBy());
 					localizedText.setId(lang.name());
 					localizedText.setLanguageCode(lang);
-					localizedText.setText(texts.get(localeIndex));
+					localizedText.setText(text);
 					localizedTexts.add(localizedText);
 				}
 			}
@@ -163,6 +635,26 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		return localizedTexts;
 	}
 
+	/**
+	 * Map tag snapshot to localized text.
+	 * 
+	 * @param snapshot
+	 * @param lang
+	 * @return
+	 * @throws NotFoundException if the tag has no text in the given language
+	 */
+	protected LocalizedTextModel mapToLocalizedText(
+		TagSnapshot snapshot,
+		LanguageCode lang
+	) throws NotFoundException {
+		List<LocalizedTextModel> localizedTexts = this.mapToLocalizedTexts(snapshot, lang);
+		if(localizedTexts.isEmpty()) {
+			throw new org.opentdc.service.exception.NotFoundException(snapshot.getId());			
+		} else {
+			return localizedTexts.get(0);
+		}
+	}
+
 	/**
 	 * Map code value container to tag.
 	 * 
@@ -172,152 +664,1546 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 	protected TagModel mapToTag(
 		CodeValueEntry codeValueEntry
 	) {
-		TagModel tag = new TagModel();
-		tag.setCreatedAt(codeValueEntry.getCreatedAt());
-		tag.setCreatedBy(codeValueEntry.getCreatedBy().get(0));
-		tag.setModifiedAt(codeValueEntry.getModifiedAt());
-		tag.setModifiedBy(codeValueEntry.getModifiedBy().get(0));
-		tag.setId(codeValueEntry.refGetPath().getLastSegment().toClassicRepresentation());
-		return tag;
+		return this.mapToTag(TagSnapshot.valueOf(codeValueEntry));
 	}
 
 	/**
-	 * Get tags container.
+	 * Map tag snapshot to tag.
 	 * 
-	 * @param codeSegment
+	 * @param snapshot
 	 * @return
 	 */
-	protected CodeValueContainer findTagsContainer(
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment
+	protected TagModel mapToTag(
+		TagSnapshot snapshot
 	) {
-		PersistenceManager pm = JDOHelper.getPersistenceManager(codeSegment);
-		CodeValueContainerQuery codeValueContainerQuery = (CodeValueContainerQuery)pm.newQuery(CodeValueContainer.class);
-		codeValueContainerQuery.thereExistsName().equalTo("Tags");
-		List<CodeValueContainer> codeValueContainers = codeSegment.getValueContainer(codeValueContainerQuery);
-		if(codeValueContainers.isEmpty()) {
-			try {
-				pm.currentTransaction().begin();
-				CodeValueContainer tagsContainer = pm.newInstance(CodeValueContainer.class);
-				tagsContainer.setName("Tags");
-				codeSegment.addValueContainer(
-					Utils.getUidAsString(),
-					tagsContainer
-				);
-				pm.currentTransaction().commit();
-				return tagsContainer;
-			} catch(Exception e) {
-				try {
-					pm.currentTransaction().rollback();
-				} catch(Exception ignore) {}
-				return null;
-			}
-		} else {
-			return codeValueContainers.iterator().next();
-		}		
+		TagModel tag = new TagModel();
+		tag.setCreatedAt(snapshot.getCreatedAt());
+		tag.setCreatedBy(snapshot.getCreatedBy());
+		tag.setModifiedAt(snapshot.getModifiedAt());
+		tag.setModifiedBy(snapshot.getModifiedBy());
+		tag.setId(snapshot.getId());
+		return tag;
 	}
 
-	/* (non-Javadoc)
-	 * @see org.opentdc.tags.ServiceProvider#list(java.lang.String, java.lang.String, long, long)
+	/**
+	 * Find tag. Lookup the tag catalog first and load the entry from
+	 * the tags container on a miss. Concurrent misses for the same id
+	 * share a single load. A load dropped while it runs does not
+	 * leave its snapshot in the tag catalog.
+	 * 
+	 * @param id
+	 * @return the snapshot of the tag or null if it does not exist
 	 */
-	@Override
-	public List<SingleLangTag> list(
-		String query,
-		String queryType,
-		int position,
-		int size
+	protected TagSnapshot findTag(
+		final String id
 	) {
-		PersistenceManager pm = this.getPersistenceManager();
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		LanguageCode lang = null;
-		if(query != null && !query.isEmpty()) {
-			int pos = query.indexOf("lang=");
-			if(pos >= 0) {
-				try {
-					lang = LanguageCode.valueOf(query.substring(pos + 5, pos + 7));
-				} catch(Exception e) {
-					throw new ValidationException("Invalid query " + query);					
+		TagSnapshot snapshot = this.tagCatalog == null ? null : this.tagCatalog.get(id);
+		if(snapshot != null) {
+			return snapshot;
+		}
+		FutureTask<TagSnapshot> load = new FutureTask<TagSnapshot>(
+			new Callable<TagSnapshot>() {
+				@Override
+				public TagSnapshot call(
+				) {
+					return OpencrxServiceProvider.this.loadTag(id);
 				}
-			} else {
-				throw new ValidationException("Invalid query " + query);				
 			}
+		);
+		FutureTask<TagSnapshot> inFlight = this.tagLoads.putIfAbsent(id, load);
+		if(inFlight == null) {
+			try {
+				load.run();
+				if(this.tagLoads.get(id) != load && this.tagCatalog != null) {
+					// The load was dropped by a write, purge or import and may have cached a stale snapshot
+					this.tagCatalog.remove(id);
+				}
+			} finally {
+				this.tagLoads.remove(id, load);
+			}
+			inFlight = load;
+		} else {
+			this.metrics.countCoalescedLoad();
 		}
-		List<SingleLangTag> tagTexts = new ArrayList<SingleLangTag>();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)pm.newQuery(CodeValueEntry.class);
-		codeValueEntryQuery.orderByCreatedAt().ascending();
-		codeValueEntryQuery.validTo().isNull();
-		List<CodeValueEntry> entries = tagsContainer.getEntry(codeValueEntryQuery);
-		for(Iterator<CodeValueEntry> i = entries.listIterator(position); i.hasNext(); ) {
-			CodeValueEntry codeValueEntry = i.next();
-			tagTexts.addAll(this.mapToTagTexts(codeValueEntry, lang));
-			if(tagTexts.size() >= size) {
-				break;
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					return inFlight.get();
+				} catch(InterruptedException e) {
+					interrupted = true;
+				} catch(ExecutionException e) {
+					if(e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException)e.getCause();
+					} else if(e.getCause() instanceof Error) {
+						throw (Error)e.getCause();
+					} else {
+						throw new RuntimeException(e.getCause());
+					}
+				}
+			}
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
 			}
 		}
-		return tagTexts;
 	}
 
-	/* (non-Javadoc)
-	 * @see org.opentdc.tags.ServiceProvider#create(org.opentdc.tags.TagsModel)
+	/**
+	 * Load tag from the tags container.
+	 * 
+	 * @param id
+	 * @return the snapshot of the tag or null if it does not exist
 	 */
-	@Override
-	public TagModel create(
-		HttpServletRequest request,
-		TagModel tag
-	) throws DuplicateException, ValidationException {
-		PersistenceManager pm = this.getPersistenceManager();
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		if(tag.getId() != null) {
-			CodeValueEntry codeValueEntry = null;
-			try {
-				codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(tag.getId());
-			} catch(Exception ignore) {}
-			if(codeValueEntry != null) {
-				throw new DuplicateException("Tag with ID " + tag.getId() + " exists already.");			
-			} else {
-				throw new ValidationException("Tag <" + tag.getId() + "> contains an ID generated on the client. This is not allowed.");
-			}
-		}
-		CodeValueEntry codeValueEntry = null;
-		codeValueEntry = pm.newInstance(CodeValueEntry.class);
-		try {
-			pm.currentTransaction().begin();
-			tagsContainer.addEntry(
-				Utils.getUidAsString(),
-				codeValueEntry
-			);
-			pm.currentTransaction().commit();
-			return this.read(
-				codeValueEntry.refGetPath().getLastSegment().toClassicRepresentation()
-			);
-		} catch(Exception e) {
-			new ServiceException(e).log();
-			try {
-				pm.currentTransaction().rollback();
-			} catch(Exception ignore) {}
-			throw new InternalServerErrorException("Unable to create tag");
-		}
+	protected TagSnapshot loadTag(
+		String id
+	) {
+		CodeValueEntry codeValueEntry = new UnitOfWork().getEntry(id);
+		return codeValueEntry == null ? null : this.cacheTag(codeValueEntry);
 	}
 
-	/* (non-Javadoc)
-	 * @see org.opentdc.tags.ServiceProvider#read(java.lang.String)
+	/**
+	 * Find valid tag.
+	 * 
+	 * @param id
+	 * @return
+	 * @throws NotFoundException if the tag does not exist or is deleted
 	 */
-	@Override
-	public TagModel read(
+	protected TagSnapshot findValidTag(
 		String id
 	) throws NotFoundException {
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntry codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(id);
-		if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis())) {
-			throw new org.opentdc.service.exception.NotFoundException(id);				
+		TagSnapshot snapshot = this.findTag(id);
+		if(snapshot == null || !snapshot.isValid(System.currentTimeMillis())) {
+			throw new org.opentdc.service.exception.NotFoundException(id);
 		}
-		return this.mapToTag(codeValueEntry);
+		return snapshot;
 	}
 
-	/* (non-Javadoc)
-	 * @see org.opentdc.tags.ServiceProvider#update(java.lang.String, org.opentdc.tags.TagsModel)
+	/**
+	 * Write entry through to the tag catalog.
+	 * 
+	 * @param codeValueEntry
+	 * @return the snapshot of the entry
+	 */
+	protected TagSnapshot cacheTag(
+		CodeValueEntry codeValueEntry
+	) {
+		TagSnapshot snapshot = TagSnapshot.valueOf(codeValueEntry);
+		if(this.tagCatalog != null) {
+			this.tagCatalog.put(snapshot);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Write modified entry through to the tag catalog and the search index.
+	 * Must be called after the modification is committed. A load of the
+	 * tag which is in flight may have read the entry before the commit, so
+	 * it is dropped and subsequent readers start a fresh load.
+	 * 
+	 * @param codeValueEntry
+	 * @return the snapshot of the entry
+	 */
+	protected TagSnapshot writeThrough(
+		CodeValueEntry codeValueEntry
+	) {
+		TagSnapshot snapshot = this.cacheTag(codeValueEntry);
+		this.tagLoads.remove(snapshot.getId());
+		this.listVersion = null;
+		this.writeSearchIndex(new IndexWrite(snapshot.getId(), snapshot));
+		return snapshot;
+	}
+
+	/**
+	 * Apply write to the published search index. While the index is
+	 * rebuilt the write is also recorded and replayed onto the new index
+	 * before it is published, so that it is not lost if the rebuild read
+	 * the entry before the write.
+	 * 
+	 * @param write
+	 */
+	private void writeSearchIndex(
+		IndexWrite write
+	) {
+		TagSearchIndex index = null;
+		synchronized(this.searchIndexWriteLock) {
+			if(this.pendingIndexWrites != null) {
+				this.pendingIndexWrites.add(write);
+			}
+			index = this.searchIndex;
+		}
+		if(index != null) {
+			write.applyTo(index);
+		}
+	}
+
+	/**
+	 * Create factory for named daemon threads.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	protected static ThreadFactory newDaemonThreadFactory(
+		final String name
+	) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(
+				Runnable runnable
+			) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Get the search index. The index is built in the background. It is
+	 * rebuilt once it is older than the configured refresh interval so
+	 * that changes made by other nodes become visible. While an index is
+	 * rebuilt the previous index is still served. Only callers arriving
+	 * before the first index is built wait for it.
+	 * 
+	 * @return
+	 * @throws InternalServerErrorException if the index can not be built
+	 */
+	protected TagSearchIndex getSearchIndex(
+	) throws InternalServerErrorException {
+		TagSearchIndex index = this.searchIndex;
+		boolean interrupted = false;
+		try {
+			while(index == null) {
+				try {
+					this.rebuildSearchIndex().get();
+				} catch(InterruptedException e) {
+					interrupted = true;
+				} catch(ExecutionException e) {
+					new ServiceException(e).log();
+					throw new InternalServerErrorException("Unable to build search index");
+				}
+				index = this.searchIndex;
+			}
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(
+			this.searchIndexRefreshMillis > 0 &&
+			System.currentTimeMillis() - index.getCreatedAt() > this.searchIndexRefreshMillis
+		) {
+			this.rebuildSearchIndex();
+		}
+		return index;
+	}
+
+	/**
+	 * Rebuild the search index in the background unless a rebuild is
+	 * already running. Writes of this node made while the index is built
+	 * are replayed onto the new index, which then replaces the current
+	 * one. The new index is discarded if the index was invalidated in the
+	 * meantime.
+	 * 
+	 * @return the running rebuild
+	 */
+	protected Future<TagSearchIndex> rebuildSearchIndex(
+	) {
+		while(true) {
+			Future<TagSearchIndex> build = this.searchIndexBuild.get();
+			if(build != null) {
+				return build;
+			}
+			final long generation = this.searchIndexGeneration.get();
+			FutureTask<TagSearchIndex> task = new FutureTask<TagSearchIndex>(
+				new Callable<TagSearchIndex>() {
+					@Override
+					public TagSearchIndex call(
+					) {
+						return OpencrxServiceProvider.this.buildAndPublishSearchIndex(generation);
+					}
+				}
+			);
+			if(this.searchIndexBuild.compareAndSet(null, task)) {
+				try {
+					this.searchIndexExecutor.execute(task);
+				} catch(RejectedExecutionException e) {
+					this.searchIndexBuild.set(null);
+					throw e;
+				}
+				return task;
+			}
+		}
+	}
+
+	/**
+	 * Build the search index while recording the writes made in the
+	 * meantime, replay them and publish the index unless it was
+	 * invalidated since the given generation.
+	 * 
+	 * @param generation
+	 * @return the new index
+	 */
+	private TagSearchIndex buildAndPublishSearchIndex(
+		long generation
+	) {
+		try {
+			synchronized(this.searchIndexWriteLock) {
+				this.pendingIndexWrites = new ArrayList<IndexWrite>();
+			}
+			TagSearchIndex index = this.buildSearchIndex();
+			synchronized(this.searchIndexWriteLock) {
+				if(this.searchIndexGeneration.get() == generation) {
+					for(IndexWrite write: this.pendingIndexWrites) {
+						write.applyTo(index);
+					}
+					this.searchIndex = index;
+				}
+			}
+			return index;
+		} finally {
+			synchronized(this.searchIndexWriteLock) {
+				this.pendingIndexWrites = null;
+			}
+			this.searchIndexBuild.set(null);
+		}
+	}
+
+	/**
+	 * Discard the search index. It is rebuilt on next use.
+	 * 
+	 */
+	protected void invalidateSearchIndex(
+	) {
+		synchronized(this.searchIndexWriteLock) {
+			this.searchIndexGeneration.incrementAndGet();
+			this.searchIndex = null;
+		}
+	}
+
+	/**
+	 * Build search index from all active entries.
+	 * 
+	 * @return
+	 */
+	protected TagSearchIndex buildSearchIndex(
+	) {
+		long started = this.metrics.start();
+		try {
+			PersistenceManager pm = this.getPersistenceManager();
+			org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
+			CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
+			Query entryQuery = pm.newQuery(CodeValueEntry.class);
+			CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)entryQuery;
+			codeValueEntryQuery.validTo().isNull();
+			this.setFetchSize(entryQuery, MAX_FETCH_SIZE);
+			TagSearchIndex index = new TagSearchIndex();
+			for(CodeValueEntry codeValueEntry: this.queryEntries(tagsContainer, codeValueEntryQuery)) {
+				index.update(TagSnapshot.valueOf(codeValueEntry), LOCALE_INDEXES);
+			}
+			return index;
+		} finally {
+			this.metrics.record("buildSearchIndex", started);
+		}
+	}
+
+	/**
+	 * Lookup entry by id.
+	 * 
+	 * @param tagsContainer
+	 * @param id
+	 * @return the entry or null if it does not exist
+	 */
+	protected CodeValueEntry lookupEntry(
+		CodeValueContainer tagsContainer,
+		String id
+	) {
+		this.metrics.countLookup();
+		return (CodeValueEntry)tagsContainer.getEntry(id);
+	}
+
+	/**
+	 * Query entries.
+	 * 
+	 * @param tagsContainer
+	 * @param codeValueEntryQuery
+	 * @return
+	 */
+	protected List<CodeValueEntry> queryEntries(
+		CodeValueContainer tagsContainer,
+		CodeValueEntryQuery codeValueEntryQuery
+	) {
+		this.metrics.countQuery();
+		return tagsContainer.getEntry(codeValueEntryQuery);
+	}
+
+	/**
+	 * Query value containers.
+	 * 
+	 * @param codeSegment
+	 * @param codeValueContainerQuery
+	 * @return
+	 */
+	protected List<CodeValueContainer> queryContainers(
+		org.opencrx.kernel.code1.jmi1.Segment codeSegment,
+		CodeValueContainerQuery codeValueContainerQuery
+	) {
+		this.metrics.countQuery();
+		return codeSegment.getValueContainer(codeValueContainerQuery);
+	}
+
+	/**
+	 * Begin transaction.
+	 * 
+	 * @param pm
+	 */
+	protected void begin(
+		PersistenceManager pm
+	) {
+		this.metrics.countTransaction();
+		pm.currentTransaction().begin();
+	}
+
+	/**
+	 * Commit transaction.
+	 * 
+	 * @param pm
+	 */
+	protected void commit(
+		PersistenceManager pm
+	) {
+		long started = this.metrics.start();
+		try {
+			pm.currentTransaction().commit();
+		} finally {
+			this.metrics.record("commit", started);
+		}
+	}
+
+	/**
+	 * Rollback transaction. Failures are ignored.
+	 * 
+	 * @param pm
+	 */
+	protected void rollback(
+		PersistenceManager pm
+	) {
+		this.metrics.countRollback();
+		try {
+			pm.currentTransaction().rollback();
+		} catch(Exception ignore) {}
+	}
+
+	/**
+	 * Get tags container. The identity of the container is cached once
+	 * resolved and re-resolved against the persistence manager of the
+	 * given segment. The cached identity is dropped if it can not be
+	 * resolved anymore.
+	 * 
+	 * @param codeSegment
+	 * @return
+	 */
+	protected CodeValueContainer findTagsContainer(
+		org.opencrx.kernel.code1.jmi1.Segment codeSegment
+	) {
+		long started = this.metrics.start();
+		try {
+			PersistenceManager pm = JDOHelper.getPersistenceManager(codeSegment);
+			CodeValueContainer tagsContainer = this.resolveTagsContainer(pm);
+			if(tagsContainer != null) {
+				return tagsContainer;
+			}
+			// Serialize lookup / creation so that concurrent first requests
+			// on an empty segment do not create more than one container
+			synchronized(this.tagsContainerLock) {
+				tagsContainer = this.resolveTagsContainer(pm);
+				if(tagsContainer == null) {
+					tagsContainer = this.lookupTagsContainer(codeSegment);
+					if(tagsContainer != null) {
+						this.tagsContainerIdentity = tagsContainer.refGetPath();
+					}
+				}
+				return tagsContainer;
+			}
+		} finally {
+			this.metrics.record("findTagsContainer", started);
+		}
+	}
+
+	/**
+	 * Resolve the cached tags container identity.
+	 * 
+	 * @param pm
+	 * @return the tags container or null if not cached or stale
+	 */
+	protected CodeValueContainer resolveTagsContainer(
+		PersistenceManager pm
+	) {
+		Path containerIdentity = this.tagsContainerIdentity;
+		if(containerIdentity != null) {
+			try {
+				return (CodeValueContainer)pm.getObjectById(containerIdentity);
+			} catch(Exception e) {
+				this.invalidateTagsContainer();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Drop the cached tags container identity.
+	 * 
+	 */
+	protected void invalidateTagsContainer(
+	) {
+		this.tagsContainerIdentity = null;
+	}
+
+	/**
+	 * Query tags container. Create it if it does not exist.
+	 * 
+	 * @param codeSegment
+	 * @return
+	 */
+	protected CodeValueContainer lookupTagsContainer(
+		org.opencrx.kernel.code1.jmi1.Segment codeSegment
+	) {
+		PersistenceManager pm = JDOHelper.getPersistenceManager(codeSegment);
+		CodeValueContainerQuery codeValueContainerQuery = (CodeValueContainerQuery)pm.newQuery(CodeValueContainer.class);
+		codeValueContainerQuery.thereExistsName().equalTo(TAGS_CONTAINER_NAME);
+		List<CodeValueContainer> codeValueContainers = this.queryContainers(codeSegment, codeValueContainerQuery);
+		if(codeValueContainers.isEmpty()) {
+			try {
+				this.begin(pm);
+				CodeValueContainer tagsContainer = pm.newInstance(CodeValueContainer.class);
+				tagsContainer.setName(TAGS_CONTAINER_NAME);
+				codeSegment.addValueContainer(
+					Utils.getUidAsString(),
+					tagsContainer
+				);
+				this.commit(pm);
+				return tagsContainer;
+			} catch(Exception e) {
+				this.rollback(pm);
+				// Container may have been created concurrently by another node
+				codeValueContainers = this.queryContainers(codeSegment, codeValueContainerQuery);
+				return codeValueContainers.isEmpty() ? null : codeValueContainers.iterator().next();
+			}
+		} else {
+			return codeValueContainers.iterator().next();
+		}		
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.ServiceProvider#list(java.lang.String, java.lang.String, long, long)
+	 */
+	@Override
+	public List<SingleLangTag> list(
+		String query,
+		String queryType,
+		int position,
+		int size
+	) {
+		return this.listRows(query, queryType, position, size).getTagTexts();
+	}
+
+	/**
+	 * List tag texts with exact row paging. Position and size count returned
+	 * rows (tag texts), not entries. Queries of the form text=prefix and,
+	 * if tags.list.languageIndex is enabled, language filtered queries are
+	 * answered from the search index. Other queries are answered from the
+	 * backend: rows before position are counted without being mapped and
+	 * the result set is not iterated beyond the page except for determining
+	 * whether more rows follow.
+	 * <p>
+	 * The search index reflects the writes of this node immediately, also
+	 * while it is rebuilt, but creates, deletes and text changes of other
+	 * nodes only after its next rebuild, i.e. up to tags.search.refresh
+	 * seconds later.
+	 * 
+	 * @param query
+	 * @param queryType
+	 * @param position
+	 * @param size
+	 * @return
+	 * @throws ValidationException if the query is not valid
+	 */
+	public TagTextPage listRows(
+		String query,
+		String queryType,
+		int position,
+		int size
+	) throws ValidationException {
+		long started = this.metrics.start();
+		try {
+			LanguageCode lang = this.parseQueryLang(query);
+			String text = this.parseQueryText(query);
+			if(this.isSearchIndexQuery(lang, text)) {
+				TagTextPage page = text != null
+					? this.getSearchIndex().search(lang, text, position, size)
+					: this.getSearchIndex().list(lang, position, size);
+				this.metrics.countListPage(page.getTagTexts().size());
+				return page;
+			}
+			final List<SingleLangTag> tagTexts = new ArrayList<SingleLangTag>();
+			boolean hasMore = false;
+			try {
+				hasMore = this.streamRows(
+					lang,
+					position,
+					size,
+					false,
+					new TagTextHandler() {
+						@Override
+						public void handle(
+							SingleLangTag tagText
+						) {
+							tagTexts.add(tagText);
+						}
+					}
+				);
+			} catch(IOException e) {
+				new ServiceException(e).log();
+				throw new InternalServerErrorException("Unable to list tags");
+			}
+			this.metrics.countListPage(tagTexts.size());
+			return new TagTextPage(tagTexts, null, hasMore);
+		} finally {
+			this.metrics.record("list", started);
+		}
+	}
+
+	/**
+	 * Return true if a list query is answered from the search index, i.e.
+	 * it is a text query or a language filtered query and the language
+	 * index is enabled.
+	 * 
+	 * @param lang
+	 * @param text
+	 * @return
+	 */
+	protected boolean isSearchIndexQuery(
+		LanguageCode lang,
+		String text
+	) {
+		return text != null || (lang != null && this.languageIndexEnabled);
+	}
+
+	/**
+	 * List tag texts with exact row paging and pass them to the handler one
+	 * by one instead of collecting them. Memory does not depend on the
+	 * page size: entries are neither added to the tag catalog nor kept in
+	 * the persistence manager once they are handled. Queries are answered
+	 * from the search index in the same cases as by listRows.
+	 * 
+	 * @param query
+	 * @param queryType
+	 * @param position
+	 * @param size
+	 * @param handler
+	 * @return true if more rows follow
+	 * @throws ValidationException if the query is not valid
+	 * @throws IOException if the handler fails
+	 */
+	public boolean listTo(
+		String query,
+		String queryType,
+		int position,
+		int size,
+		final TagTextHandler handler
+	) throws ValidationException, IOException {
+		long started = this.metrics.start();
+		try {
+			LanguageCode lang = this.parseQueryLang(query);
+			String text = this.parseQueryText(query);
+			final int[] count = new int[1];
+			TagTextHandler countingHandler = new TagTextHandler() {
+				@Override
+				public void handle(
+					SingleLangTag tagText
+				) throws IOException {
+					handler.handle(tagText);
+					count[0]++;
+				}
+			};
+			boolean hasMore = false;
+			if(this.isSearchIndexQuery(lang, text)) {
+				TagTextPage page = text != null
+					? this.getSearchIndex().search(lang, text, position, size)
+					: this.getSearchIndex().list(lang, position, size);
+				for(SingleLangTag tagText: page.getTagTexts()) {
+					countingHandler.handle(tagText);
+				}
+				hasMore = page.hasMore();
+			} else {
+				hasMore = this.streamRows(lang, position, size, true, countingHandler);
+			}
+			this.metrics.countListPage(count[0]);
+			return hasMore;
+		} finally {
+			this.metrics.record("listStream", started);
+		}
+	}
+
+	/**
+	 * List tag texts with exact row paging and write them as JSON array to
+	 * the output stream while iterating the result set.
+	 * 
+	 * @param query
+	 * @param queryType
+	 * @param position
+	 * @param size
+	 * @param out the stream is flushed but not closed
+	 * @return true if more rows follow
+	 * @throws ValidationException if the query is not valid
+	 * @throws IOException if writing fails
+	 */
+	public boolean writeJson(
+		String query,
+		String queryType,
+		int position,
+		int size,
+		OutputStream out
+	) throws ValidationException, IOException {
+		final JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+		writer.beginArray();
+		boolean hasMore = this.listTo(
+			query,
+			queryType,
+			position,
+			size,
+			new TagTextHandler() {
+				@Override
+				public void handle(
+					SingleLangTag tagText
+				) throws IOException {
+					GSON.toJson(tagText, SingleLangTag.class, writer);
+				}
+			}
+		);
+		writer.endArray();
+		writer.flush();
+		return hasMore;
+	}
+
+	/**
+	 * Pass tag texts with exact row paging to the handler. Position and
+	 * size count rows. Rows before position are counted without being
+	 * mapped and the result set is not iterated beyond the page except for
+	 * determining whether more rows follow.
+	 * 
+	 * @param lang the language or null for all languages
+	 * @param position
+	 * @param size
+	 * @param stream if true entries are evicted once handled and not cached
+	 * @param handler
+	 * @return true if more rows follow
+	 * @throws IOException if the handler fails
+	 */
+	protected boolean streamRows(
+		LanguageCode lang,
+		int position,
+		int size,
+		boolean stream,
+		TagTextHandler handler
+	) throws IOException {
+		PersistenceManager pm = this.getPersistenceManager();
+		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
+		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
+		Query entryQuery = pm.newQuery(CodeValueEntry.class);
+		CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)entryQuery;
+		codeValueEntryQuery.orderByCreatedAt().ascending();
+		codeValueEntryQuery.validTo().isNull();
+		this.setFetchSize(entryQuery, Math.min(size + 1, MAX_FETCH_SIZE));
+		List<CodeValueEntry> entries = this.queryEntries(tagsContainer, codeValueEntryQuery);
+		int skip = Math.max(position, 0);
+		int handled = 0;
+		boolean hasMore = false;
+		for(Iterator<CodeValueEntry> i = entries.iterator(); i.hasNext(); ) {
+			CodeValueEntry codeValueEntry = i.next();
+			int count = this.countTagTexts(codeValueEntry.getShortText(), lang);
+			if(count <= skip) {
+				skip -= count;
+				if(stream) {
+					pm.evict(codeValueEntry);
+				}
+				continue;
+			}
+			if(handled >= size) {
+				hasMore = true;
+				break;
+			}
+			TagSnapshot snapshot = stream ? TagSnapshot.valueOf(codeValueEntry) : this.cacheTag(codeValueEntry);
+			List<SingleLangTag> rows = this.mapToTagTexts(snapshot, lang);
+			int take = Math.min(rows.size() - skip, size - handled);
+			for(int j = skip; j < skip + take; j++) {
+				handler.handle(rows.get(j));
+			}
+			handled += take;
+			if(stream) {
+				pm.evict(codeValueEntry);
+			}
+			if(skip + take < rows.size()) {
+				hasMore = true;
+				break;
+			}
+			skip = 0;
+		}
+		return hasMore;
+	}
+
+	/**
+	 * Count the tag texts an entry maps to without mapping them.
+	 * 
+	 * @param texts the short texts of the entry
+	 * @param queryLang
+	 * @return
+	 */
+	protected int countTagTexts(
+		List<String> texts,
+		LanguageCode queryLang
+	) {
+		int count = 0;
+		for(int i = 0; i < LANGUAGES.length; i++) {
+			if(queryLang == null || queryLang == LANGUAGES[i]) {
+				int localeIndex = LOCALE_INDEXES[i];
+				if(localeIndex < texts.size() && texts.get(localeIndex) != null && !texts.get(localeIndex).isEmpty()) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * List tag texts with keyset paging. The returned page contains at most
+	 * size rows and a cursor which allows to continue with the next page.
+	 * Only entries not older than the cursor are queried so that the cost
+	 * of a page does not depend on its position.
+	 * 
+	 * @param query
+	 * @param queryType
+	 * @param cursor the cursor returned with the previous page or null for the first page
+	 * @param size
+	 * @return
+	 * @throws ValidationException if the query or the cursor is not valid
+	 */
+	public TagTextPage listPage(
+		String query,
+		String queryType,
+		String cursor,
+		int size
+	) throws ValidationException {
+		long started = this.metrics.start();
+		try {
+			PersistenceManager pm = this.getPersistenceManager();
+			org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
+			LanguageCode lang = this.parseQueryLang(query);
+			if(this.parseQueryText(query) != null) {
+				throw new ValidationException("Text queries are not supported with cursor paging: " + query);
+			}
+			if(size < 1) {
+				throw new ValidationException("Invalid page size " + size);
+			}
+			ListCursor from = cursor == null || cursor.isEmpty() ? null : ListCursor.decode(cursor);
+			List<SingleLangTag> tagTexts = new ArrayList<SingleLangTag>();
+			CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
+			Query entryQuery = pm.newQuery(CodeValueEntry.class);
+			CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)entryQuery;
+			codeValueEntryQuery.orderByCreatedAt().ascending();
+			codeValueEntryQuery.validTo().isNull();
+			if(from != null) {
+				codeValueEntryQuery.createdAt().greaterThanOrEqualTo(from.getTimeAsDate());
+			}
+			this.setFetchSize(entryQuery, size + 1);
+			Iterator<CodeValueEntry> entries = this.queryEntries(tagsContainer, codeValueEntryQuery).iterator();
+			TagSnapshot lookahead = entries.hasNext() ? this.cacheTag(entries.next()) : null;
+			ListCursor next = from;
+			boolean hasMore = false;
+			while(lookahead != null && !hasMore) {
+				// Entries with equal createdAt are returned in any order. Order them by id.
+				long createdAt = lookahead.getCreatedAtTime();
+				List<TagSnapshot> group = new ArrayList<TagSnapshot>();
+				while(lookahead != null && lookahead.getCreatedAtTime() == createdAt) {
+					group.add(lookahead);
+					lookahead = entries.hasNext() ? this.cacheTag(entries.next()) : null;
+				}
+				Collections.sort(group, TAG_ID_ORDER);
+				for(TagSnapshot snapshot: group) {
+					if(from != null && from.compareTo(createdAt, snapshot.getId()) < 0) {
+						continue;
+					}
+					List<SingleLangTag> rows = this.mapToTagTexts(snapshot, lang);
+					int skip = from == null ? 0 : from.getConsumedRows(createdAt, snapshot.getId(), rows.size());
+					if(skip < rows.size() && tagTexts.size() >= size) {
+						hasMore = true;
+						break;
+					}
+					int count = Math.min(rows.size() - skip, size - tagTexts.size());
+					if(count > 0) {
+						tagTexts.addAll(rows.subList(skip, skip + count));
+					}
+					next = new ListCursor(createdAt, snapshot.getId(), skip + Math.max(count, 0));
+					if(skip + count < rows.size()) {
+						hasMore = true;
+						break;
+					}
+				}
+			}
+			this.metrics.countListPage(tagTexts.size());
+			return new TagTextPage(
+				tagTexts,
+				hasMore ? next.encode() : null
+			);
+		} finally {
+			this.metrics.record("listPage", started);
+		}
+	}
+
+	/**
+	 * List tags modified since a watermark in modification order. Deleted
+	 * tags are included as tombstones. The returned watermark is always
+	 * set and allows to resume the feed, also after the last page.
+	 * <p>
+	 * modifiedAt is set before a transaction commits, so a change may
+	 * become visible after changes with a later modifiedAt were returned.
+	 * Therefore only changes whose modifiedAt is older than
+	 * tags.changes.lag milliseconds are returned and the watermark never
+	 * passes now minus the lag. Every committed change is returned at
+	 * least once provided its transaction commits within the lag after
+	 * its modifiedAt was set. A tag modified again later is returned
+	 * again with its latest state.
+	 * 
+	 * @param watermark the watermark returned with the previous page or null to start from the beginning
+	 * @param size maximum number of changes
+	 * @return
+	 * @throws ValidationException if the watermark or size is not valid
+	 */
+	public TagChangesPage listChanges(
+		String watermark,
+		int size
+	) throws ValidationException {
+		long started = this.metrics.start();
+		try {
+			if(size < 1) {
+				throw new ValidationException("Invalid page size " + size);
+			}
+			PersistenceManager pm = this.getPersistenceManager();
+			org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
+			ListCursor from = watermark == null || watermark.isEmpty() ? null : ListCursor.decode(watermark);
+			CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
+			Query entryQuery = pm.newQuery(CodeValueEntry.class);
+			CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)entryQuery;
+			codeValueEntryQuery.orderByModifiedAt().ascending();
+			if(from != null) {
+				codeValueEntryQuery.modifiedAt().greaterThanOrEqualTo(from.getTimeAsDate());
+			}
+			codeValueEntryQuery.modifiedAt().lessThan(new Date(System.currentTimeMillis() - this.changesLagMillis));
+			this.setFetchSize(entryQuery, size + 1);
+			List<TagChange> changes = new ArrayList<TagChange>();
+			ListCursor next = from == null ? new ListCursor(0L, "", 0) : from;
+			boolean hasMore = false;
+			Iterator<CodeValueEntry> entries = this.queryEntries(tagsContainer, codeValueEntryQuery).iterator();
+			TagSnapshot lookahead = entries.hasNext() ? TagSnapshot.valueOf(entries.next()) : null;
+			while(lookahead != null && !hasMore) {
+				// Entries with equal modifiedAt are returned in any order. Order them by id.
+				long modifiedAt = lookahead.getModifiedAtTime();
+				List<TagSnapshot> group = new ArrayList<TagSnapshot>();
+				while(lookahead != null && lookahead.getModifiedAtTime() == modifiedAt) {
+					group.add(lookahead);
+					lookahead = entries.hasNext() ? TagSnapshot.valueOf(entries.next()) : null;
+				}
+				Collections.sort(group, TAG_ID_ORDER);
+				for(TagSnapshot snapshot: group) {
+					if(from != null && from.getConsumedRows(modifiedAt, snapshot.getId(), 1) > 0) {
+						continue;
+					}
+					if(changes.size() >= size) {
+						hasMore = true;
+						break;
+					}
+					boolean deleted = snapshot.getValidTo() != null;
+					changes.add(
+						new TagChange(
+							snapshot.getId(),
+							snapshot.getModifiedAt(),
+							deleted,
+							deleted ? null : this.mapToTag(snapshot),
+							deleted ? null : this.mapToLocalizedTexts(snapshot, null)
+						)
+					);
+					next = new ListCursor(modifiedAt, snapshot.getId(), 1);
+				}
+			}
+			return new TagChangesPage(changes, next.encode(), hasMore);
+		} finally {
+			this.metrics.record("listChanges", started);
+		}
+	}
+
+	/**
+	 * Parse the language of a list query of the form lang=XX.
+	 * 
+	 * @param query
+	 * @return the language or null if the query is empty
+	 * @throws ValidationException if the query is not valid
+	 */
+	protected LanguageCode parseQueryLang(
+		String query
+	) throws ValidationException {
+		LanguageCode lang = null;
+		if(query != null && !query.isEmpty()) {
+			int pos = query.indexOf("lang=");
+			if(pos >= 0) {
+				try {
+					lang = LanguageCode.valueOf(query.substring(pos + 5, pos + 7));
+				} catch(Exception e) {
+					throw new ValidationException("Invalid query " + query);					
+				}
+			} else if(query.indexOf("text=") < 0) {
+				throw new ValidationException("Invalid query " + query);				
+			}
+		}
+		return lang;
+	}
+
+	/**
+	 * Parse the text prefix of a list query of the form text=prefix.
+	 * The query may be combined with a language, e.g. lang=XX&text=prefix.
+	 * 
+	 * @param query
+	 * @return the prefix or null if the query does not contain a text
+	 * @throws ValidationException if the prefix is empty
+	 */
+	protected String parseQueryText(
+		String query
+	) throws ValidationException {
+		if(query == null) {
+			return null;
+		}
+		int pos = query.indexOf("text=");
+		if(pos < 0) {
+			return null;
+		}
+		int end = query.indexOf('&', pos);
+		String prefix = end < 0 ? query.substring(pos + 5) : query.substring(pos + 5, end);
+		if(prefix.trim().isEmpty()) {
+			throw new ValidationException("Invalid query " + query);
+		}
+		return prefix.trim();
+	}
+
+	/**
+	 * Hint the backend to fetch query results in batches of the given size.
+	 * 
+	 * @param query
+	 * @param fetchSize
+	 */
+	protected void setFetchSize(
+		Query query,
+		int fetchSize
+	) {
+		try {
+			query.getFetchPlan().setFetchSize(fetchSize);
+		} catch(Exception ignore) {}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.ServiceProvider#create(org.opentdc.tags.TagsModel)
+	 */
+	@Override
+	public TagModel create(
+		HttpServletRequest request,
+		TagModel tag
+	) throws DuplicateException, ValidationException {
+		long started = this.metrics.start();
+		try {
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			CodeValueContainer tagsContainer = unitOfWork.getTagsContainer();
+			if(tag.getId() != null) {
+				CodeValueEntry codeValueEntry = null;
+				try {
+					codeValueEntry = unitOfWork.getEntry(tag.getId());
+				} catch(Exception ignore) {}
+				if(codeValueEntry != null) {
+					throw new DuplicateException("Tag with ID " + tag.getId() + " exists already.");			
+				} else {
+					throw new ValidationException("Tag <" + tag.getId() + "> contains an ID generated on the client. This is not allowed.");
+				}
+			}
+			CodeValueEntry codeValueEntry = null;
+			codeValueEntry = pm.newInstance(CodeValueEntry.class);
+			try {
+				this.begin(pm);
+				tagsContainer.addEntry(
+					Utils.getUidAsString(),
+					codeValueEntry
+				);
+				this.commit(pm);
+			} catch(Exception e) {
+				new ServiceException(e).log();
+				this.rollback(pm);
+				this.invalidateTagsContainer();
+				throw new InternalServerErrorException("Unable to create tag");
+			}
+			return this.mapToTag(this.writeThrough(codeValueEntry));
+		} finally {
+			this.metrics.record("create", started);
+		}
+	}
+
+	/**
+	 * Create tags together with their localized texts. The tags are
+	 * persisted in chunks of the configured batch size, one transaction
+	 * per chunk. The created tags are mapped from the persisted entries
+	 * without re-reading them.
+	 * 
+	 * @param request
+	 * @param tags
+	 * @return the created tags and texts in the order of the request
+	 * @throws ValidationException if a tag or text is not valid. No tag is created in this case.
+	 * @throws InternalServerErrorException if a chunk fails. Tags of preceding chunks remain created.
+	 */
+	public List<TagWithTexts> createAll(
+		HttpServletRequest request,
+		List<TagWithTexts> tags
+	) throws ValidationException, InternalServerErrorException {
+		return this.createAll(request, tags, this.batchChunkSize);
+	}
+
+	/**
+	 * Create tags together with their localized texts in chunks of the
+	 * given size.
+	 * 
+	 * @param request
+	 * @param tags
+	 * @param chunkSize
+	 * @return the created tags and texts in the order of the request
+	 * @throws ValidationException if a tag or text is not valid. No tag is created in this case.
+	 * @throws InternalServerErrorException if a chunk fails. Tags of preceding chunks remain created.
+	 */
+	public List<TagWithTexts> createAll(
+		HttpServletRequest request,
+		List<TagWithTexts> tags,
+		int chunkSize
+	) throws ValidationException, InternalServerErrorException {
+		long started = this.metrics.start();
+		try {
+			for(int i = 0; i < tags.size(); i++) {
+				TagWithTexts tag = tags.get(i);
+				if(tag.getTag() != null && tag.getTag().getId() != null) {
+					throw new ValidationException("Tag <" + tag.getTag().getId() + "> contains an ID generated on the client. This is not allowed.");
+				}
+				if(tag.getLocalizedTexts() != null) {
+					boolean[] languages = new boolean[LANGUAGES.length];
+					for(LocalizedTextModel localizedText: tag.getLocalizedTexts()) {
+						this.validateText("tags[" + i + "]", localizedText);
+						if(localizedText.getId() != null) {
+							throw new ValidationException("Localized text <" + localizedText.getId() + "> contains an ID generated on the client. This is not allowed.");
+						}
+						if(languages[localizedText.getLanguageCode().ordinal()]) {
+							throw new ValidationException("LocalizedText with LanguageCode <" + localizedText.getLanguageCode() + "> is contained more than once in a tag.");
+						}
+						languages[localizedText.getLanguageCode().ordinal()] = true;
+					}
+				}
+			}
+			PersistenceManager pm = this.getPersistenceManager();
+			org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
+			CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
+			List<TagWithTexts> createdTags = new ArrayList<TagWithTexts>(tags.size());
+			int chunk = Math.max(1, chunkSize);
+			for(int from = 0; from < tags.size(); from += chunk) {
+				List<TagWithTexts> chunkTags = tags.subList(from, Math.min(from + chunk, tags.size()));
+				List<CodeValueEntry> entries = new ArrayList<CodeValueEntry>(chunkTags.size());
+				try {
+					this.begin(pm);
+					for(TagWithTexts tag: chunkTags) {
+						CodeValueEntry codeValueEntry = pm.newInstance(CodeValueEntry.class);
+						tagsContainer.addEntry(
+							Utils.getUidAsString(),
+							codeValueEntry
+						);
+						if(tag.getLocalizedTexts() != null) {
+							for(LocalizedTextModel localizedText: tag.getLocalizedTexts()) {
+								this.setShortText(
+									codeValueEntry,
+									this.getLocaleIndex(localizedText.getLanguageCode()),
+									localizedText.getText()
+								);
+							}
+						}
+						entries.add(codeValueEntry);
+					}
+					this.commit(pm);
+				} catch(Exception e) {
+					new ServiceException(e).log();
+					this.rollback(pm);
+					this.invalidateTagsContainer();
+					throw new InternalServerErrorException("Unable to create tags");
+				}
+				for(CodeValueEntry codeValueEntry: entries) {
+					TagSnapshot snapshot = this.writeThrough(codeValueEntry);
+					createdTags.add(
+						new TagWithTexts(
+							this.mapToTag(snapshot),
+							this.mapToLocalizedTexts(snapshot, null)
+						)
+					);
+				}
+			}
+			return createdTags;
+		} finally {
+			this.metrics.record("createAll", started);
+		}
+	}
+
+	/**
+	 * Export all tags including deleted ones to the channel in the format
+	 * of {@link TagSnapshotWriter}.
+	 * 
+	 * @param channel the channel is not closed
+	 * @return the number of exported tags
+	 * @throws IOException
+	 */
+	public int exportTags(
+		WritableByteChannel channel
+	) throws IOException {
+		long started = this.metrics.start();
+		try {
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			Query entryQuery = pm.newQuery(CodeValueEntry.class);
+			CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)entryQuery;
+			codeValueEntryQuery.orderByCreatedAt().ascending();
+			this.setFetchSize(entryQuery, MAX_FETCH_SIZE);
+			TagSnapshotWriter writer = new TagSnapshotWriter(channel);
+			for(CodeValueEntry codeValueEntry: this.queryEntries(unitOfWork.getTagsContainer(), codeValueEntryQuery)) {
+				writer.write(TagSnapshot.valueOf(codeValueEntry));
+				pm.evict(codeValueEntry);
+			}
+			writer.finish();
+			return writer.getCount();
+		} finally {
+			this.metrics.record("exportTags", started);
+		}
+	}
+
+	/**
+	 * Import tags exported by exportTags in chunks of the configured batch
+	 * size.
+	 * 
+	 * @param channel the channel is not closed
+	 * @return the number of imported tags
+	 * @throws IOException if the channel can not be read
+	 * @throws InternalServerErrorException if a chunk fails. Tags of preceding chunks remain imported.
+	 */
+	public int importTags(
+		ReadableByteChannel channel
+	) throws IOException, InternalServerErrorException {
+		return this.importTags(channel, this.batchChunkSize);
+	}
+
+	/**
+	 * Import tags exported by exportTags in chunks of the given size, one
+	 * transaction per chunk. Tags are imported with their original id.
+	 * Existing tags are overwritten. The short texts and validTo are
+	 * restored. The audit fields are maintained by openCRX and reflect
+	 * the import.
+	 * 
+	 * @param channel the channel is not closed
+	 * @param chunkSize
+	 * @return the number of imported tags
+	 * @throws IOException if the channel can not be read
+	 * @throws InternalServerErrorException if a chunk fails. Tags of preceding chunks remain imported.
+	 */
+	public int importTags(
+		ReadableByteChannel channel,
+		int chunkSize
+	) throws IOException, InternalServerErrorException {
+		long started = this.metrics.start();
+		try {
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			CodeValueContainer tagsContainer = unitOfWork.getTagsContainer();
+			// Collect ids of existing entries with one query instead of a lookup per tag
+			Query entryQuery = pm.newQuery(CodeValueEntry.class);
+			this.setFetchSize(entryQuery, MAX_FETCH_SIZE);
+			Set<String> existingIds = new HashSet<String>();
+			for(CodeValueEntry codeValueEntry: this.queryEntries(tagsContainer, (CodeValueEntryQuery)entryQuery)) {
+				existingIds.add(codeValueEntry.refGetPath().getLastSegment().toClassicRepresentation());
+				pm.evict(codeValueEntry);
+			}
+			TagSnapshotReader reader = new TagSnapshotReader(channel);
+			List<TagSnapshot> chunk = new ArrayList<TagSnapshot>();
+			int count = 0;
+			try {
+				TagSnapshot snapshot = null;
+				while((snapshot = reader.read()) != null) {
+					chunk.add(snapshot);
+					if(chunk.size() >= Math.max(1, chunkSize)) {
+						this.importChunk(pm, tagsContainer, chunk, existingIds);
+						count += chunk.size();
+						chunk.clear();
+					}
+				}
+				if(!chunk.isEmpty()) {
+					this.importChunk(pm, tagsContainer, chunk, existingIds);
+					count += chunk.size();
+				}
+			} finally {
+				this.tagLoads.clear();
+				if(this.tagCatalog != null) {
+					this.tagCatalog.clear();
+				}
+				this.invalidateSearchIndex();
+				this.listVersion = null;
+			}
+			return count;
+		} finally {
+			this.metrics.record("importTags", started);
+		}
+	}
+
+	/**
+	 * Import chunk of tags in one transaction.
+	 * 
+	 * @param pm
+	 * @param tagsContainer
+	 * @param chunk
+	 * @param existingIds ids of existing entries. Updated with the imported ids.
+	 * @throws InternalServerErrorException
+	 */
+	protected void importChunk(
+		PersistenceManager pm,
+		CodeValueContainer tagsContainer,
+		List<TagSnapshot> chunk,
+		Set<String> existingIds
+	) throws InternalServerErrorException {
+		List<CodeValueEntry> entries = new ArrayList<CodeValueEntry>(chunk.size());
+		try {
+			this.begin(pm);
+			for(TagSnapshot snapshot: chunk) {
+				CodeValueEntry codeValueEntry = existingIds.contains(snapshot.getId())
+					? this.lookupEntry(tagsContainer, snapshot.getId())
+					: null;
+				if(codeValueEntry == null) {
+					codeValueEntry = pm.newInstance(CodeValueEntry.class);
+					tagsContainer.addEntry(
+						snapshot.getId(),
+						codeValueEntry
+					);
+				}
+				List<String> texts = codeValueEntry.getShortText();
+				texts.clear();
+				for(int i = 0; i < snapshot.getShortTextCount(); i++) {
+					texts.add(snapshot.getShortText(i));
+				}
+				codeValueEntry.setValidTo(snapshot.getValidTo());
+				entries.add(codeValueEntry);
+			}
+			this.commit(pm);
+		} catch(Exception e) {
+			new ServiceException(e).log();
+			this.rollback(pm);
+			throw new InternalServerErrorException("Unable to import tags");
+		}
+		for(CodeValueEntry codeValueEntry: entries) {
+			existingIds.add(codeValueEntry.refGetPath().getLastSegment().toClassicRepresentation());
+			pm.evict(codeValueEntry);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.ServiceProvider#read(java.lang.String)
+	 */
+	@Override
+	public TagModel read(
+		String id
+	) throws NotFoundException {
+		long started = this.metrics.start();
+		try {
+			return this.mapToTag(this.findValidTag(id));
+		} finally {
+			this.metrics.record("read", started);
+		}
+	}
+
+	/**
+	 * Read tags together with their localized texts. Tags are served from
+	 * the tag catalog if possible. Missing tags are loaded within one unit
+	 * of work, i.e. the tags container is resolved once for all of them.
+	 * 
+	 * @param ids the ids of the tags. Duplicate ids are returned once.
+	 * @param lang the language of the texts or null for all languages
+	 * @return the tags and texts in the order of the ids. Tags which do not exist or are deleted are omitted.
+	 */
+	public List<TagWithTexts> readAll(
+		Collection<String> ids,
+		LanguageCode lang
+	) {
+		long started = this.metrics.start();
+		try {
+			Map<String,TagSnapshot> snapshots = new LinkedHashMap<String,TagSnapshot>();
+			UnitOfWork unitOfWork = null;
+			for(String id: ids) {
+				if(id == null || snapshots.containsKey(id)) {
+					continue;
+				}
+				TagSnapshot snapshot = this.tagCatalog == null ? null : this.tagCatalog.get(id);
+				if(snapshot == null) {
+					if(unitOfWork == null) {
+						unitOfWork = new UnitOfWork();
+					}
+					CodeValueEntry codeValueEntry = unitOfWork.getEntry(id);
+					if(codeValueEntry != null) {
+						snapshot = this.cacheTag(codeValueEntry);
+					}
+				}
+				snapshots.put(id, snapshot);
+			}
+			long now = System.currentTimeMillis();
+			List<TagWithTexts> tags = new ArrayList<TagWithTexts>();
+			for(TagSnapshot snapshot: snapshots.values()) {
+				if(snapshot != null && snapshot.isValid(now)) {
+					tags.add(
+						new TagWithTexts(
+							this.mapToTag(snapshot),
+							this.mapToLocalizedTexts(snapshot, lang)
+						)
+					);
+				}
+			}
+			return tags;
+		} finally {
+			this.metrics.record("readAll", started);
+		}
+	}
+
+	/**
+	 * Get the version of a tag. The version changes with each modification
+	 * of the tag or one of its localized texts and can be used as entity tag.
+	 * 
+	 * @param id
+	 * @return
+	 * @throws NotFoundException
+	 */
+	public String getVersion(
+		String id
+	) throws NotFoundException {
+		return this.findValidTag(id).getVersion();
+	}
+
+	/**
+	 * Get the last modification of a tag or one of its localized texts.
+	 * 
+	 * @param id
+	 * @return
+	 * @throws NotFoundException
+	 */
+	public Date getLastModified(
+		String id
+	) throws NotFoundException {
+		return this.findValidTag(id).getModifiedAt();
+	}
+
+	/**
+	 * Read tag if its version does not match the given entity tags.
+	 * 
+	 * @param id
+	 * @param ifNoneMatch the value of an If-None-Match header
+	 * @return the tag or null if it is not modified
+	 * @throws NotFoundException
+	 */
+	public TagModel readIfModified(
+		String id,
+		String ifNoneMatch
+	) throws NotFoundException {
+		TagSnapshot snapshot = this.findValidTag(id);
+		return isNotModified(snapshot.getVersion(), ifNoneMatch) ? null : this.mapToTag(snapshot);
+	}
+
+	/**
+	 * List localized texts of a tag if its version does not match the
+	 * given entity tags.
+	 * 
+	 * @param tid
+	 * @param ifNoneMatch the value of an If-None-Match header
+	 * @return the localized texts or null if they are not modified
+	 * @throws NotFoundException
+	 */
+	public List<LocalizedTextModel> listTextsIfModified(
+		String tid,
+		String ifNoneMatch
+	) throws NotFoundException {
+		TagSnapshot snapshot = this.findValidTag(tid);
+		return isNotModified(snapshot.getVersion(), ifNoneMatch) ? null : this.mapToLocalizedTexts(snapshot, null);
+	}
+
+	/**
+	 * Get the version of the tag list. The version is derived from the
+	 * latest modification of any tag including deleted ones. It is cached
+	 * for the configured time to live and reset by local modifications.
+	 * 
+	 * @return the version as quoted entity tag
+	 */
+	public String getListVersion(
+	) {
+		long now = System.currentTimeMillis();
+		ListVersion cached = this.listVersion;
+		if(cached != null && now - cached.computedAt < this.listVersionTtlMillis) {
+			return cached.version;
+		}
+		long started = this.metrics.start();
+		try {
+			PersistenceManager pm = this.getPersistenceManager();
+			org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
+			CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
+			Query entryQuery = pm.newQuery(CodeValueEntry.class);
+			CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)entryQuery;
+			codeValueEntryQuery.orderByModifiedAt().descending();
+			this.setFetchSize(entryQuery, 1);
+			Iterator<CodeValueEntry> entries = this.queryEntries(tagsContainer, codeValueEntryQuery).iterator();
+			long modifiedAt = entries.hasNext() ? entries.next().getModifiedAt().getTime() : 0L;
+			String version = "\"" + Long.toHexString(modifiedAt) + "\"";
+			this.listVersion = new ListVersion(version, now);
+			return version;
+		} finally {
+			this.metrics.record("getListVersion", started);
+		}
+	}
+
+	/**
+	 * Return true if the version matches one of the given entity tags.
+	 * Weak entity tags match their strong counterpart.
+	 * 
+	 * @param version
+	 * @param ifNoneMatch the value of an If-None-Match header
+	 * @return
+	 */
+	public static boolean isNotModified(
+		String version,
+		String ifNoneMatch
+	) {
+		if(ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+			return false;
+		}
+		StringTokenizer tokenizer = new StringTokenizer(ifNoneMatch, ",");
+		while(tokenizer.hasMoreTokens()) {
+			String tag = tokenizer.nextToken().trim();
+			if(tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if("*".equals(tag) || tag.equals(version)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.ServiceProvider#update(java.lang.String, org.opentdc.tags.TagsModel)
 	 */
 	@Override
 	public TagModel update(
@@ -325,25 +2211,24 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		String id, 
 		TagModel tag
 	) throws NotFoundException, ValidationException {
-		PersistenceManager pm = this.getPersistenceManager();
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntry codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(id);
-		if(codeValueEntry == null) {
-			throw new org.opentdc.service.exception.NotFoundException(id);				
-		}
+		long started = this.metrics.start();
 		try {
-			pm.currentTransaction().begin();
-			codeValueEntry.setEntryValue(new Date().toString());
-			pm.currentTransaction().commit();
-		} catch(Exception e) {
-			new ServiceException(e).log();
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			CodeValueEntry codeValueEntry = unitOfWork.getValidEntry(id);
 			try {
-				pm.currentTransaction().rollback();
-			} catch(Exception ignore) {}
-			throw new InternalServerErrorException("Unable to update tag");
+				this.begin(pm);
+				codeValueEntry.setEntryValue(new Date().toString());
+				this.commit(pm);
+			} catch(Exception e) {
+				new ServiceException(e).log();
+				this.rollback(pm);
+				throw new InternalServerErrorException("Unable to update tag");
+			}
+			return this.mapToTag(this.writeThrough(codeValueEntry));
+		} finally {
+			this.metrics.record("update", started);
 		}
-		return this.read(id);		
 	}
 
 	/* (non-Javadoc)
@@ -353,24 +2238,249 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 	public void delete(
 		String id
 	) throws NotFoundException, InternalServerErrorException {
-		PersistenceManager pm = this.getPersistenceManager();
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntry codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(id);
-		if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis())) {
-			throw new org.opentdc.service.exception.NotFoundException(id);				
+		long started = this.metrics.start();
+		try {
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			CodeValueEntry codeValueEntry = unitOfWork.getValidEntry(id);
+			try {
+				this.begin(pm);
+				codeValueEntry.setValidTo(new Date());
+				this.commit(pm);
+			} catch(Exception e) {
+				new ServiceException(e).log();
+				this.rollback(pm);
+				throw new InternalServerErrorException("Unable to delete tag");
+			}
+			this.writeThrough(codeValueEntry);
+		} finally {
+			this.metrics.record("delete", started);
 		}
+	}
+
+	/**
+	 * Purge deleted tags whose validTo is older than the retention. The
+	 * tags are removed in batches, one transaction per batch, pausing
+	 * between the batches to throttle the load on the backend. Purged
+	 * tags are removed from the tag catalog, the search index and the
+	 * loads in flight. Purge is not coordinated across nodes and should
+	 * be scheduled on a single node. If nodes purge concurrently, a batch
+	 * which conflicts with another node's purge is rolled back and the
+	 * remaining tags are purged by the next run. Purge stops after the
+	 * current batch if the provider is closed.
+	 * 
+	 * @param retentionMillis minimum age of the deletion in milliseconds
+	 * @param batchSize maximum number of tags per transaction
+	 * @param pauseMillis pause between two batches in milliseconds
+	 * @return the number of purged tags
+	 * @throws InternalServerErrorException if a batch fails. Tags of preceding batches remain purged.
+	 */
+	public int purge(
+		long retentionMillis,
+		int batchSize,
+		long pauseMillis
+	) throws InternalServerErrorException {
+		long started = this.metrics.start();
 		try {
-			pm.currentTransaction().begin();
-			codeValueEntry.setValidTo(new Date());
-			pm.currentTransaction().commit();
-		} catch(Exception e) {
-			new ServiceException(e).log();
+			Date cutoff = new Date(System.currentTimeMillis() - retentionMillis);
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			int purged = 0;
+			while(true) {
+				Query entryQuery = pm.newQuery(CodeValueEntry.class);
+				CodeValueEntryQuery codeValueEntryQuery = (CodeValueEntryQuery)entryQuery;
+				codeValueEntryQuery.validTo().lessThan(cutoff);
+				this.setFetchSize(entryQuery, batchSize);
+				List<CodeValueEntry> batch = new ArrayList<CodeValueEntry>();
+				for(CodeValueEntry codeValueEntry: this.queryEntries(unitOfWork.getTagsContainer(), codeValueEntryQuery)) {
+					batch.add(codeValueEntry);
+					if(batch.size() >= batchSize) {
+						break;
+					}
+				}
+				if(batch.isEmpty()) {
+					break;
+				}
+				List<String> ids = new ArrayList<String>();
+				try {
+					this.begin(pm);
+					for(CodeValueEntry codeValueEntry: batch) {
+						ids.add(codeValueEntry.refGetPath().getLastSegment().toClassicRepresentation());
+						pm.deletePersistent(codeValueEntry);
+					}
+					this.commit(pm);
+				} catch(Exception e) {
+					new ServiceException(e).log();
+					this.rollback(pm);
+					throw new InternalServerErrorException("Unable to purge tags");
+				}
+				for(String id: ids) {
+					this.tagLoads.remove(id);
+					if(this.tagCatalog != null) {
+						this.tagCatalog.remove(id);
+					}
+					this.writeSearchIndex(new IndexWrite(id, null));
+				}
+				purged += ids.size();
+				this.metrics.countPurgeBatch(ids.size());
+				if(batch.size() < batchSize || this.closed) {
+					break;
+				}
+				try {
+					Thread.sleep(pauseMillis);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			return purged;
+		} finally {
+			this.metrics.record("purge", started);
+		}
+	}
+
+	/**
+	 * Validate localized text.
+	 * 
+	 * @param tid
+	 * @param tag
+	 * @throws ValidationException
+	 */
+	protected void validateText(
+		String tid,
+		LocalizedTextModel tag
+	) throws ValidationException {
+		if (tag.getText() == null || tag.getText().isEmpty()) {
+			throw new ValidationException("LocalizedText <" + tid + "/lang/" + tag.getId() + "> must contain a valid text.");
+		}
+		// enforce that the title is a single word
+		StringTokenizer _tokenizer = new StringTokenizer(tag.getText());
+		if (_tokenizer.countTokens() != 1) {
+			throw new ValidationException("LocalizedText <" + tid + "/lang/" + tag.getId() + "> must consist of exactly one word <" + tag.getText() + "> (is " + _tokenizer.countTokens() + ").");
+		}
+		if (tag.getLanguageCode() == null) {
+			throw new ValidationException("LocalizedText <" + tid + "/lang/" + tag.getId() + 
+					"> must contain a LanguageCode.");
+		}
+	}
+
+	/**
+	 * Write a single short text of an entry in its own transaction. If the
+	 * transaction fails because of a concurrent modification of the entry,
+	 * the entry is refreshed, the preconditions are checked again and the
+	 * text is re-applied. Retries are bounded and backed off exponentially.
+	 * Other failures are not retried.
+	 * 
+	 * @param pm
+	 * @param codeValueEntry
+	 * @param tid
+	 * @param lang
+	 * @param text
+	 * @param create if true the text must not exist yet, otherwise it must exist
+	 * @param failureMessage
+	 * @return the snapshot of the committed entry
+	 * @throws NotFoundException if the tag was deleted or the text removed concurrently
+	 * @throws DuplicateException if the text was created concurrently
+	 * @throws InternalServerErrorException if the write fails
+	 */
+	protected TagSnapshot writeShortText(
+		PersistenceManager pm,
+		CodeValueEntry codeValueEntry,
+		String tid,
+		LanguageCode lang,
+		String text,
+		boolean create,
+		String failureMessage
+	) throws NotFoundException, DuplicateException, InternalServerErrorException {
+		int localeIndex = this.getLocaleIndex(lang);
+		for(int attempt = 0; ; attempt++) {
+			if(attempt > 0) {
+				pm.refresh(codeValueEntry);
+				if(codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis()) {
+					throw new org.opentdc.service.exception.NotFoundException(tid);
+				}
+				List<String> texts = codeValueEntry.getShortText();
+				boolean exists = localeIndex < texts.size() && !texts.get(localeIndex).isEmpty();
+				if(create && exists) {
+					throw new DuplicateException("LocalizedText with LanguageCode <" + lang + "> exists already in tag <" + tid + ">.");
+				} else if(!create && !exists) {
+					throw new org.opentdc.service.exception.NotFoundException(tid);
+				}
+			}
 			try {
-				pm.currentTransaction().rollback();
-			} catch(Exception ignore) {}
-			throw new InternalServerErrorException("Unable to delete tag");
+				this.begin(pm);
+				this.setShortText(codeValueEntry, localeIndex, text);
+				this.commit(pm);
+			} catch(Exception e) {
+				this.rollback(pm);
+				boolean conflict = isConcurrentModification(e);
+				if(conflict) {
+					this.metrics.countConflict();
+				}
+				if(!conflict || attempt >= this.maxRetries) {
+					new ServiceException(e).log();
+					throw new InternalServerErrorException(failureMessage);
+				}
+				this.metrics.countRetry();
+				try {
+					long backoff = this.retryBackoffMillis << attempt;
+					Thread.sleep(backoff + (long)(Math.random() * backoff));
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InternalServerErrorException(failureMessage);
+				}
+				continue;
+			}
+			// The write is committed. Failures from here on are not write failures.
+			return this.writeThrough(codeValueEntry);
+		}
+	}
+
+	/**
+	 * Return true if the exception is caused by a concurrent modification,
+	 * i.e. an optimistic lock conflict.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	protected static boolean isConcurrentModification(
+		Throwable e
+	) {
+		for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if(cause instanceof JDOOptimisticVerificationException) {
+				return true;
+			}
+			if(
+				cause instanceof ServiceException &&
+				((ServiceException)cause).getExceptionCode() == BasicException.Code.CONCURRENT_ACCESS_FAILURE
+			) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Set short text. Pad the short texts of the entry up to the given
+	 * locale index. Must be called within a transaction.
+	 * 
+	 * @param codeValueEntry
+	 * @param localeIndex
+	 * @param text
+	 */
+	protected void setShortText(
+		CodeValueEntry codeValueEntry,
+		int localeIndex,
+		String text
+	) {
+		List<String> texts = codeValueEntry.getShortText();
+		while(localeIndex >= texts.size()) {
+			texts.add("");	
 		}
+		texts.set(
+			localeIndex,
+			text
+		);
 	}
 
 	/* (non-Javadoc)
@@ -384,13 +2494,12 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		int position, 
 		int size
 	) {
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntry codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(tid);
-		if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis())) {
-			throw new org.opentdc.service.exception.NotFoundException(tid);				
+		long started = this.metrics.start();
+		try {
+			return this.mapToLocalizedTexts(this.findValidTag(tid), null);
+		} finally {
+			this.metrics.record("listTexts", started);
 		}
-		return this.mapToLocalizedTexts(codeValueEntry, null);
 	}
 
 	/* (non-Javadoc)
@@ -402,57 +2511,221 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		String tid, 
 		LocalizedTextModel tag
 	) throws DuplicateException, ValidationException {
-		PersistenceManager pm = this.getPersistenceManager();
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntry codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(tid);
-		if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis())) {
-			throw new org.opentdc.service.exception.NotFoundException(tid);				
-		}
-		if (tag.getText() == null || tag.getText().isEmpty()) {
-			throw new ValidationException("LocalizedText <" + tid + "/lang/" + tag.getId() + "> must contain a valid text.");
-		}
-		// enforce that the title is a single word
-		StringTokenizer _tokenizer = new StringTokenizer(tag.getText());
-		if (_tokenizer.countTokens() != 1) {
-			throw new ValidationException("LocalizedText <" + tid + "/lang/" + tag.getId() + "> must consist of exactly one word <" + tag.getText() + "> (is " + _tokenizer.countTokens() + ").");
-		}
-		if (tag.getLanguageCode() == null) {
-			throw new ValidationException("LocalizedText <" + tid + "/lang/" + tag.getId() + 
-					"> must contain a LanguageCode.");
-		}		
-		if(tag.getId() != null) {
-			LocalizedTextModel localizedText = null;
-			try {
-				localizedText = this.readText(tid, tag.getId());
-			} catch(Exception ignore) {}
-			if(localizedText != null) {
-				throw new DuplicateException("Localized text with ID " + tag.getId() + " exists already.");			
-			} else {
-				throw new ValidationException("Localized text <" + tag.getId() + "> contains an ID generated on the client. This is not allowed.");
+		long started = this.metrics.start();
+		try {
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			CodeValueEntry codeValueEntry = unitOfWork.getValidEntry(tid);
+			this.validateText(tid, tag);
+			if(tag.getId() != null) {
+				List<LocalizedTextModel> localizedTexts = null;
+				try {
+					localizedTexts = this.mapToLocalizedTexts(codeValueEntry, LanguageCode.valueOf(tag.getId()));
+				} catch(Exception ignore) {}
+				if(localizedTexts != null && !localizedTexts.isEmpty()) {
+					throw new DuplicateException("Localized text with ID " + tag.getId() + " exists already.");			
+				} else {
+					throw new ValidationException("Localized text <" + tag.getId() + "> contains an ID generated on the client. This is not allowed.");
+				}
 			}
+			int localeIndex = this.getLocaleIndex(tag.getLanguageCode());
+			if(localeIndex < codeValueEntry.getShortText().size() && !codeValueEntry.getShortText().get(localeIndex).isEmpty()) {
+				throw new DuplicateException("LocalizedText with LanguageCode <" + tag.getLanguageCode() + "> exists already in tag <" + tid + ">.");			
+			}
+			TagSnapshot snapshot = this.writeShortText(
+				pm,
+				codeValueEntry,
+				tid,
+				tag.getLanguageCode(),
+				tag.getText(),
+				true,
+				"Unable to create text"
+			);
+			return this.mapToLocalizedText(snapshot, tag.getLanguageCode());
+		} finally {
+			this.metrics.record("createText", started);
 		}
-		int localeIndex = this.getLocaleIndex(tag.getLanguageCode());
-		if(localeIndex < codeValueEntry.getShortText().size() && !codeValueEntry.getShortText().get(localeIndex).isEmpty()) {
-			throw new DuplicateException("LocalizedText with LanguageCode <" + tag.getLanguageCode() + "> exists already in tag <" + tid + ">.");			
-		}
+	}
+
+	/**
+	 * Create, update or delete localized texts of many tags. Changes are
+	 * grouped by tag and applied in chunks of the configured batch size,
+	 * one transaction per chunk. A failing chunk is retried tag by tag so
+	 * that a failure only affects the changes of the failing tag.
+	 * 
+	 * @param changes
+	 * @return the failed changes ordered by their position in the batch
+	 */
+	public List<TagTextChangeFailure> changeTexts(
+		List<TagTextChange> changes
+	) {
+		return this.changeTexts(changes, this.batchChunkSize);
+	}
+
+	/**
+	 * Create, update or delete localized texts of many tags in chunks of
+	 * the given number of tags.
+	 * 
+	 * @param changes
+	 * @param chunkSize
+	 * @return the failed changes ordered by their position in the batch
+	 */
+	public List<TagTextChangeFailure> changeTexts(
+		List<TagTextChange> changes,
+		int chunkSize
+	) {
+		long started = this.metrics.start();
 		try {
-			pm.currentTransaction().begin();
-			while(localeIndex >= codeValueEntry.getShortText().size()) {
-				codeValueEntry.getShortText().add("");	
+			List<TagTextChangeFailure> failures = new ArrayList<TagTextChangeFailure>();
+			Map<String,List<Integer>> changesByTag = new LinkedHashMap<String,List<Integer>>();
+			for(int i = 0; i < changes.size(); i++) {
+				TagTextChange change = changes.get(i);
+				if(change.getTagId() == null || change.getLanguageCode() == null) {
+					failures.add(new TagTextChangeFailure(i, change, "Change must contain a tag ID and a LanguageCode."));
+					continue;
+				}
+				if(!change.isDelete()) {
+					LocalizedTextModel localizedText = new LocalizedTextModel();
+					localizedText.setLanguageCode(change.getLanguageCode());
+					localizedText.setText(change.getText());
+					try {
+						this.validateText(change.getTagId(), localizedText);
+					} catch(ValidationException e) {
+						failures.add(new TagTextChangeFailure(i, change, e.getMessage()));
+						continue;
+					}
+				}
+				List<Integer> tagChanges = changesByTag.get(change.getTagId());
+				if(tagChanges == null) {
+					tagChanges = new ArrayList<Integer>();
+					changesByTag.put(change.getTagId(), tagChanges);
+				}
+				tagChanges.add(i);
+			}
+			PersistenceManager pm = this.getPersistenceManager();
+			org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
+			CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
+			List<CodeValueEntry> chunkEntries = new ArrayList<CodeValueEntry>();
+			List<List<Integer>> chunkChanges = new ArrayList<List<Integer>>();
+			int chunk = Math.max(1, chunkSize);
+			long now = System.currentTimeMillis();
+			for(Map.Entry<String,List<Integer>> tagChanges: changesByTag.entrySet()) {
+				CodeValueEntry codeValueEntry = null;
+				try {
+					codeValueEntry = this.lookupEntry(tagsContainer, tagChanges.getKey());
+				} catch(Exception ignore) {}
+				if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < now)) {
+					for(Integer index: tagChanges.getValue()) {
+						failures.add(new TagTextChangeFailure(index, changes.get(index), "Tag <" + tagChanges.getKey() + "> not found."));
+					}
+					continue;
+				}
+				chunkEntries.add(codeValueEntry);
+				chunkChanges.add(tagChanges.getValue());
+				if(chunkEntries.size() >= chunk) {
+					this.applyTextChanges(pm, changes, chunkEntries, chunkChanges, failures);
+					chunkEntries.clear();
+					chunkChanges.clear();
+				}
 			}
-			codeValueEntry.getShortText().set(
-				this.getLocaleIndex(tag.getLanguageCode()),
-				tag.getText()
+			if(!chunkEntries.isEmpty()) {
+				this.applyTextChanges(pm, changes, chunkEntries, chunkChanges, failures);
+			}
+			Collections.sort(
+				failures,
+				new Comparator<TagTextChangeFailure>() {
+					@Override
+					public int compare(
+						TagTextChangeFailure f1,
+						TagTextChangeFailure f2
+					) {
+						return f1.getIndex() < f2.getIndex() ? -1 : f1.getIndex() == f2.getIndex() ? 0 : 1;
+					}
+				}
 			);
-			pm.currentTransaction().commit();
-			return this.readText(tid, tag.getLanguageCode().name());
+			return failures;
+		} finally {
+			this.metrics.record("changeTexts", started);
+		}
+	}
+
+	/**
+	 * Apply text changes to entries in one transaction. Retry entry by
+	 * entry if the transaction fails.
+	 * 
+	 * @param pm
+	 * @param changes all changes of the batch
+	 * @param entries
+	 * @param entryChanges for each entry the positions of its changes in the batch
+	 * @param failures
+	 */
+	protected void applyTextChanges(
+		PersistenceManager pm,
+		List<TagTextChange> changes,
+		List<CodeValueEntry> entries,
+		List<List<Integer>> entryChanges,
+		List<TagTextChangeFailure> failures
+	) {
+		try {
+			this.begin(pm);
+			for(int i = 0; i < entries.size(); i++) {
+				this.applyTextChanges(entries.get(i), changes, entryChanges.get(i));
+			}
+			this.commit(pm);
 		} catch(Exception e) {
 			new ServiceException(e).log();
-			try {
-				pm.currentTransaction().rollback();
-			} catch(Exception ignore) {}
-			throw new InternalServerErrorException("Unable to create text");
+			this.rollback(pm);
+			if(entries.size() > 1) {
+				for(int i = 0; i < entries.size(); i++) {
+					this.applyTextChanges(
+						pm,
+						changes,
+						Collections.singletonList(entries.get(i)),
+						Collections.singletonList(entryChanges.get(i)),
+						failures
+					);
+				}
+			} else {
+				for(List<Integer> indexes: entryChanges) {
+					for(Integer index: indexes) {
+						failures.add(new TagTextChangeFailure(index, changes.get(index), "Unable to update text"));
+					}
+				}
+			}
+			return;
+		}
+		for(CodeValueEntry codeValueEntry: entries) {
+			this.writeThrough(codeValueEntry);
+		}
+	}
+
+	/**
+	 * Apply text changes to entry. The short texts are padded once for
+	 * all changes. Must be called within a transaction.
+	 * 
+	 * @param codeValueEntry
+	 * @param changes all changes of the batch
+	 * @param indexes the positions of the changes of this entry
+	 */
+	protected void applyTextChanges(
+		CodeValueEntry codeValueEntry,
+		List<TagTextChange> changes,
+		List<Integer> indexes
+	) {
+		int maxLocaleIndex = -1;
+		for(Integer index: indexes) {
+			maxLocaleIndex = Math.max(maxLocaleIndex, this.getLocaleIndex(changes.get(index).getLanguageCode()));
+		}
+		List<String> texts = codeValueEntry.getShortText();
+		while(maxLocaleIndex >= texts.size()) {
+			texts.add("");
+		}
+		for(Integer index: indexes) {
+			TagTextChange change = changes.get(index);
+			texts.set(
+				this.getLocaleIndex(change.getLanguageCode()),
+				change.isDelete() ? "" : change.getText()
+			);
 		}
 	}
 
@@ -464,17 +2737,11 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		String tid, 
 		String lid
 	) throws NotFoundException {
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntry codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(tid);
-		if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis())) {
-			throw new org.opentdc.service.exception.NotFoundException(tid);				
-		}
-		List<LocalizedTextModel> localizedTexts = this.mapToLocalizedTexts(codeValueEntry, LanguageCode.valueOf(lid));
-		if(localizedTexts.isEmpty()) {
-			throw new org.opentdc.service.exception.NotFoundException(tid);			
-		} else {
-			return localizedTexts.get(0);
+		long started = this.metrics.start();
+		try {
+			return this.mapToLocalizedText(this.findValidTag(tid), LanguageCode.valueOf(lid));
+		} finally {
+			this.metrics.record("readText", started);
 		}
 	}
 
@@ -488,38 +2755,30 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		String id,
 		LocalizedTextModel tag
 	) throws NotFoundException, ValidationException {
-		PersistenceManager pm = this.getPersistenceManager();
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntry codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(tid);
-		if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis())) {
-			throw new org.opentdc.service.exception.NotFoundException(tid);				
-		}
-		List<LocalizedTextModel> localizedTexts = this.mapToLocalizedTexts(codeValueEntry, LanguageCode.valueOf(id));
-		if(localizedTexts.isEmpty()) {
-			throw new org.opentdc.service.exception.NotFoundException(tid);
-		}
-		if(tag.getLanguageCode() != LanguageCode.valueOf(id)) {
-			throw new ValidationException("LocalizedText <" + tid + "/lang/" + id + ">: it is not allowed to change the LanguageCode.");			
-		}
+		long started = this.metrics.start();
 		try {
-			pm.currentTransaction().begin();
-			int localeIndex = this.getLocaleIndex(LanguageCode.valueOf(id));
-			while(localeIndex >= codeValueEntry.getShortText().size()) {
-				codeValueEntry.getShortText().add("");	
-			}
-			codeValueEntry.getShortText().set(
-				localeIndex,
-				tag.getText()
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			CodeValueEntry codeValueEntry = unitOfWork.getValidEntry(tid);
+			List<LocalizedTextModel> localizedTexts = this.mapToLocalizedTexts(codeValueEntry, LanguageCode.valueOf(id));
+			if(localizedTexts.isEmpty()) {
+				throw new org.opentdc.service.exception.NotFoundException(tid);
+			}
+			if(tag.getLanguageCode() != LanguageCode.valueOf(id)) {
+				throw new ValidationException("LocalizedText <" + tid + "/lang/" + id + ">: it is not allowed to change the LanguageCode.");			
+			}
+			TagSnapshot snapshot = this.writeShortText(
+				pm,
+				codeValueEntry,
+				tid,
+				LanguageCode.valueOf(id),
+				tag.getText(),
+				false,
+				"Unable to update text"
 			);
-			pm.currentTransaction().commit();
-			return this.readText(tid, id);
-		} catch(Exception e) {
-			new ServiceException(e).log();
-			try {
-				pm.currentTransaction().rollback();
-			} catch(Exception ignore) {}
-			throw new InternalServerErrorException("Unable to update text");			
+			return this.mapToLocalizedText(snapshot, LanguageCode.valueOf(id));
+		} finally {
+			this.metrics.record("updateText", started);
 		}
 	}
 
@@ -531,34 +2790,26 @@ public class OpencrxServiceProvider extends AbstractOpencrxServiceProvider imple
 		String tid, 
 		String id
 	) throws NotFoundException, InternalServerErrorException {
-		PersistenceManager pm = this.getPersistenceManager();
-		org.opencrx.kernel.code1.jmi1.Segment codeSegment = this.getCodeSegment();
-		CodeValueContainer tagsContainer = this.findTagsContainer(codeSegment);
-		CodeValueEntry codeValueEntry = (CodeValueEntry)tagsContainer.getEntry(tid);
-		if(codeValueEntry == null || (codeValueEntry.getValidTo() != null && codeValueEntry.getValidTo().getTime() < System.currentTimeMillis())) {
-			throw new org.opentdc.service.exception.NotFoundException(tid);				
-		}
-		List<LocalizedTextModel> localizedTexts = this.mapToLocalizedTexts(codeValueEntry, LanguageCode.valueOf(id));
-		if(localizedTexts.isEmpty()) {
-			throw new org.opentdc.service.exception.NotFoundException(tid);
-		}
+		long started = this.metrics.start();
 		try {
-			pm.currentTransaction().begin();
-			int localeIndex = this.getLocaleIndex(LanguageCode.valueOf(id));
-			while(localeIndex >= codeValueEntry.getShortText().size()) {
-				codeValueEntry.getShortText().add("");	
-			}
-			codeValueEntry.getShortText().set(
-				localeIndex,
-				""
+			UnitOfWork unitOfWork = new UnitOfWork();
+			PersistenceManager pm = unitOfWork.getPersistenceManager();
+			CodeValueEntry codeValueEntry = unitOfWork.getValidEntry(tid);
+			List<LocalizedTextModel> localizedTexts = this.mapToLocalizedTexts(codeValueEntry, LanguageCode.valueOf(id));
+			if(localizedTexts.isEmpty()) {
+				throw new org.opentdc.service.exception.NotFoundException(tid);
+			}
+			this.writeShortText(
+				pm,
+				codeValueEntry,
+				tid,
+				LanguageCode.valueOf(id),
+				"",
+				false,
+				"Unable to delete text"
 			);
-			pm.currentTransaction().commit();
-		} catch(Exception e) {
-			new ServiceException(e).log();
-			try {
-				pm.currentTransaction().rollback();
-			} catch(Exception ignore) {}
-			throw new InternalServerErrorException("Unable to delete text");			
+		} finally {
+			this.metrics.record("deleteText", started);
 		}
 	}
 	
@@ -0,0 +1,244 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory catalog of tag snapshots. The catalog is bounded in size
+ * (approximately least recently used entries are evicted first) and
+ * entries expire after a configurable time to live. The catalog is
+ * maintained write-through by the service provider. A snapshot never
+ * replaces a cached snapshot with a later modification time, so that
+ * a read racing with a write can not re-insert stale state.
+ *
+ */
+public class TagCatalog {
+
+	private final int maxSize;
+	private final long ttlMillis;
+	private final ConcurrentMap<String,CatalogEntry> entries = new ConcurrentHashMap<String,CatalogEntry>();
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Cached snapshot with its load time and last access tick.
+	 *
+	 */
+	private static class CatalogEntry {
+		
+		final TagSnapshot snapshot;
+		final long loadedAt;
+		volatile long accessedAt;
+		
+		CatalogEntry(
+			TagSnapshot snapshot,
+			long loadedAt,
+			long accessedAt
+		) {
+			this.snapshot = snapshot;
+			this.loadedAt = loadedAt;
+			this.accessedAt = accessedAt;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize maximum number of cached tags
+	 * @param ttlMillis time to live of cached tags in milliseconds. No expiration if <= 0.
+	 */
+	public TagCatalog(
+		int maxSize,
+		long ttlMillis
+	) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * Get cached snapshot.
+	 * 
+	 * @param id
+	 * @return the snapshot or null if not cached or expired
+	 */
+	public TagSnapshot get(
+		String id
+	) {
+		CatalogEntry entry = this.entries.get(id);
+		if(entry != null && this.isExpired(entry)) {
+			if(this.entries.remove(id, entry)) {
+				this.evictionCount.incrementAndGet();
+			}
+			entry = null;
+		}
+		if(entry == null) {
+			this.missCount.incrementAndGet();
+			return null;
+		} else {
+			entry.accessedAt = this.clock.incrementAndGet();
+			this.hitCount.incrementAndGet();
+			return entry.snapshot;
+		}
+	}
+
+	/**
+	 * Add or replace snapshot. The snapshot is dropped if the cached
+	 * snapshot of the tag was modified later.
+	 * 
+	 * @param snapshot
+	 */
+	public void put(
+		TagSnapshot snapshot
+	) {
+		CatalogEntry entry = new CatalogEntry(snapshot, System.currentTimeMillis(), this.clock.incrementAndGet());
+		while(true) {
+			CatalogEntry current = this.entries.putIfAbsent(snapshot.getId(), entry);
+			if(current == null) {
+				break;
+			}
+			if(
+				current.snapshot.getModifiedAtTime() > snapshot.getModifiedAtTime() &&
+				!this.isExpired(current)
+			) {
+				return;
+			}
+			if(this.entries.replace(snapshot.getId(), current, entry)) {
+				return;
+			}
+		}
+		if(this.entries.size() > this.maxSize) {
+			this.evict();
+		}
+	}
+
+	/**
+	 * Evict the least recently used entries until the catalog is shrunk
+	 * to 90% of its maximum size. Only one thread evicts at a time.
+	 * 
+	 */
+	private void evict(
+	) {
+		if(!this.evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			List<Long> ticks = new ArrayList<Long>(this.entries.size());
+			for(CatalogEntry entry: this.entries.values()) {
+				ticks.add(entry.accessedAt);
+			}
+			int excess = ticks.size() - (this.maxSize - this.maxSize / 10);
+			if(excess <= 0) {
+				return;
+			}
+			Collections.sort(ticks);
+			long threshold = ticks.get(excess - 1);
+			for(Map.Entry<String,CatalogEntry> entry: this.entries.entrySet()) {
+				if(entry.getValue().accessedAt <= threshold && this.entries.remove(entry.getKey(), entry.getValue())) {
+					this.evictionCount.incrementAndGet();
+				}
+			}
+		} finally {
+			this.evicting.set(false);
+		}
+	}
+
+	/**
+	 * Remove snapshot.
+	 * 
+	 * @param id
+	 */
+	public void remove(
+		String id
+	) {
+		this.entries.remove(id);
+	}
+
+	/**
+	 * Remove all snapshots.
+	 * 
+	 */
+	public void clear(
+	) {
+		this.entries.clear();
+	}
+
+	/**
+	 * Return true if entry is expired.
+	 * 
+	 * @param entry
+	 * @return
+	 */
+	private boolean isExpired(
+		CatalogEntry entry
+	) {
+		return this.ttlMillis > 0 && System.currentTimeMillis() - entry.loadedAt > this.ttlMillis;
+	}
+
+	/**
+	 * @return number of cached snapshots
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.get();
+	}
+
+}
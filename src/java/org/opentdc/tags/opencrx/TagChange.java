@@ -0,0 +1,103 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.Date;
+import java.util.List;
+
+import org.opentdc.service.LocalizedTextModel;
+import org.opentdc.tags.TagModel;
+
+/**
+ * Change of a tag. Deleted tags are reported as tombstones without tag
+ * and localized texts.
+ *
+ */
+public class TagChange {
+
+	private final String id;
+	private final Date modifiedAt;
+	private final boolean deleted;
+	private final TagModel tag;
+	private final List<LocalizedTextModel> localizedTexts;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param id
+	 * @param modifiedAt
+	 * @param deleted
+	 * @param tag
+	 * @param localizedTexts
+	 */
+	public TagChange(
+		String id,
+		Date modifiedAt,
+		boolean deleted,
+		TagModel tag,
+		List<LocalizedTextModel> localizedTexts
+	) {
+		this.id = id;
+		this.modifiedAt = modifiedAt;
+		this.deleted = deleted;
+		this.tag = tag;
+		this.localizedTexts = localizedTexts;
+	}
+
+	/**
+	 * @return the id of the tag
+	 */
+	public String getId() {
+		return this.id;
+	}
+
+	/**
+	 * @return the modifiedAt
+	 */
+	public Date getModifiedAt() {
+		return this.modifiedAt;
+	}
+
+	/**
+	 * @return true if the tag is deleted
+	 */
+	public boolean isDeleted() {
+		return this.deleted;
+	}
+
+	/**
+	 * @return the tag or null if deleted
+	 */
+	public TagModel getTag() {
+		return this.tag;
+	}
+
+	/**
+	 * @return the localized texts or null if deleted
+	 */
+	public List<LocalizedTextModel> getLocalizedTexts() {
+		return this.localizedTexts;
+	}
+
+}
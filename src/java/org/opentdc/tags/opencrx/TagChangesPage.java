@@ -0,0 +1,76 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.List;
+
+/**
+ * Page of tag changes.
+ *
+ */
+public class TagChangesPage {
+
+	private final List<TagChange> changes;
+	private final String watermark;
+	private final boolean hasMore;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param changes
+	 * @param watermark
+	 * @param hasMore
+	 */
+	public TagChangesPage(
+		List<TagChange> changes,
+		String watermark,
+		boolean hasMore
+	) {
+		this.changes = changes;
+		this.watermark = watermark;
+		this.hasMore = hasMore;
+	}
+
+	/**
+	 * @return the changes in modification order
+	 */
+	public List<TagChange> getChanges() {
+		return this.changes;
+	}
+
+	/**
+	 * @return the watermark to pass with the next request
+	 */
+	public String getWatermark() {
+		return this.watermark;
+	}
+
+	/**
+	 * @return true if more changes are available immediately
+	 */
+	public boolean hasMore() {
+		return this.hasMore;
+	}
+
+}
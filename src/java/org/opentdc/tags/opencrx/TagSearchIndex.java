@@ -0,0 +1,272 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import org.opentdc.tags.SingleLangTag;
+import org.opentdc.util.LanguageCode;
+
+/**
+ * Index over tag texts. For each language the texts are kept in a sorted
+ * map keyed by the normalized (lower case, accents removed) text and in a
+ * sorted map keyed by the creation time of the tag. Prefix lookups are
+ * range scans on the first map, language filtered lists are scans on the
+ * second map which only contains tags with a text in this language.
+ * Searches do not lock, updates are serialized.
+ *
+ */
+public class TagSearchIndex {
+
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final char KEY_SEPARATOR = '\u0000';
+	private static final LanguageCode[] LANGUAGES = LanguageCode.values();
+
+	private final List<ConcurrentSkipListMap<String,IndexEntry>> texts;
+	private final List<ConcurrentSkipListMap<String,IndexEntry>> members;
+	private final Map<String,TagKeys> keysByTag;
+	private final long createdAt;
+
+	/**
+	 * Indexed text of a tag.
+	 *
+	 */
+	private static class IndexEntry {
+		
+		final String tagId;
+		final String text;
+		
+		IndexEntry(
+			String tagId,
+			String text
+		) {
+			this.tagId = tagId;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Index keys of a tag per language.
+	 *
+	 */
+	private static class TagKeys {
+		
+		final String[] textKeys = new String[LANGUAGES.length];
+		final String[] memberKeys = new String[LANGUAGES.length];
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 */
+	public TagSearchIndex(
+	) {
+		this.texts = new ArrayList<ConcurrentSkipListMap<String,IndexEntry>>(LANGUAGES.length);
+		this.members = new ArrayList<ConcurrentSkipListMap<String,IndexEntry>>(LANGUAGES.length);
+		for(int i = 0; i < LANGUAGES.length; i++) {
+			this.texts.add(new ConcurrentSkipListMap<String,IndexEntry>());
+			this.members.add(new ConcurrentSkipListMap<String,IndexEntry>());
+		}
+		this.keysByTag = new ConcurrentHashMap<String,TagKeys>();
+		this.createdAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Normalize text for matching.
+	 * 
+	 * @param text
+	 * @return the text in lower case and without diacritics
+	 */
+	public static String normalize(
+		String text
+	) {
+		String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+		return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Add, replace or remove the texts of a tag. Deleted tags are removed.
+	 * 
+	 * @param snapshot
+	 * @param localeIndexes locale index for each language in LanguageCode order
+	 */
+	public synchronized void update(
+		TagSnapshot snapshot,
+		int[] localeIndexes
+	) {
+		this.remove(snapshot.getId());
+		if(!snapshot.isValid(System.currentTimeMillis())) {
+			return;
+		}
+		TagKeys keys = new TagKeys();
+		String memberKey = String.format("%016x", snapshot.getCreatedAtTime()) + KEY_SEPARATOR + snapshot.getId();
+		boolean indexed = false;
+		for(int i = 0; i < LANGUAGES.length; i++) {
+			String text = snapshot.getShortText(localeIndexes[i]);
+			if(!text.isEmpty()) {
+				IndexEntry entry = new IndexEntry(snapshot.getId(), text);
+				keys.textKeys[i] = normalize(text) + KEY_SEPARATOR + snapshot.getId();
+				keys.memberKeys[i] = memberKey;
+				this.texts.get(i).put(keys.textKeys[i], entry);
+				this.members.get(i).put(memberKey, entry);
+				indexed = true;
+			}
+		}
+		if(indexed) {
+			this.keysByTag.put(snapshot.getId(), keys);
+		}
+	}
+
+	/**
+	 * Remove the texts of a tag.
+	 * 
+	 * @param id
+	 */
+	public synchronized void remove(
+		String id
+	) {
+		TagKeys keys = this.keysByTag.remove(id);
+		if(keys != null) {
+			for(int i = 0; i < LANGUAGES.length; i++) {
+				if(keys.textKeys[i] != null) {
+					this.texts.get(i).remove(keys.textKeys[i]);
+				}
+				if(keys.memberKeys[i] != null) {
+					this.members.get(i).remove(keys.memberKeys[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Search tag texts starting with the given prefix. Matching ignores
+	 * case and accents. Results are ordered by language and text.
+	 * 
+	 * @param queryLang the language or null for all languages
+	 * @param prefix
+	 * @param position
+	 * @param size
+	 * @return
+	 */
+	public TagTextPage search(
+		LanguageCode queryLang,
+		String prefix,
+		int position,
+		int size
+	) {
+		String from = normalize(prefix);
+		String to = from + Character.MAX_VALUE;
+		List<SingleLangTag> tagTexts = new ArrayList<SingleLangTag>();
+		int skip = Math.max(position, 0);
+		for(int i = 0; i < LANGUAGES.length; i++) {
+			LanguageCode lang = LANGUAGES[i];
+			if(queryLang != null && queryLang != lang) {
+				continue;
+			}
+			NavigableMap<String,IndexEntry> matches = this.texts.get(i).subMap(from, true, to, false);
+			for(IndexEntry entry: matches.values()) {
+				if(skip > 0) {
+					skip--;
+					continue;
+				}
+				if(tagTexts.size() >= size) {
+					return new TagTextPage(tagTexts, null, true);
+				}
+				tagTexts.add(this.newTagText(lang, entry));
+			}
+		}
+		return new TagTextPage(tagTexts, null, false);
+	}
+
+	/**
+	 * List the tag texts of a language ordered by creation time of the tag.
+	 * Only tags with a text in the given language are visited.
+	 * 
+	 * @param lang
+	 * @param position
+	 * @param size
+	 * @return
+	 */
+	public TagTextPage list(
+		LanguageCode lang,
+		int position,
+		int size
+	) {
+		List<SingleLangTag> tagTexts = new ArrayList<SingleLangTag>();
+		int skip = Math.max(position, 0);
+		for(IndexEntry entry: this.members.get(lang.ordinal()).values()) {
+			if(skip > 0) {
+				skip--;
+				continue;
+			}
+			if(tagTexts.size() >= size) {
+				return new TagTextPage(tagTexts, null, true);
+			}
+			tagTexts.add(this.newTagText(lang, entry));
+		}
+		return new TagTextPage(tagTexts, null, false);
+	}
+
+	/**
+	 * Create tag text.
+	 * 
+	 * @param lang
+	 * @param entry
+	 * @return
+	 */
+	private SingleLangTag newTagText(
+		LanguageCode lang,
+		IndexEntry entry
+	) {
+		SingleLangTag tagText = new SingleLangTag();
+		tagText.setLanguageCode(lang);
+		tagText.setLocalizedTextId(lang.name());
+		tagText.setTagId(entry.tagId);
+		tagText.setText(entry.text);
+		return tagText;
+	}
+
+	/**
+	 * @return number of indexed tags
+	 */
+	public int size() {
+		return this.keysByTag.size();
+	}
+
+	/**
+	 * @return the creation time of the index
+	 */
+	public long getCreatedAt() {
+		return this.createdAt;
+	}
+
+}
@@ -0,0 +1,234 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.Date;
+import java.util.List;
+
+import org.opencrx.kernel.code1.jmi1.CodeValueEntry;
+
+/**
+ * Immutable snapshot of a tag entry. Holds the audit fields and the
+ * short texts of a code value entry.
+ *
+ */
+public class TagSnapshot {
+
+	private static final String[] NO_TEXTS = new String[0];
+
+	private final String id;
+	private final long createdAt;
+	private final String createdBy;
+	private final long modifiedAt;
+	private final String modifiedBy;
+	private final long validTo;
+	private final String[] shortTexts;
+
+	/**
+	 * Constructor. The short texts are copied.
+	 * 
+	 * @param id
+	 * @param createdAt
+	 * @param createdBy
+	 * @param modifiedAt
+	 * @param modifiedBy
+	 * @param validTo
+	 * @param shortTexts
+	 */
+	public TagSnapshot(
+		String id,
+		Date createdAt,
+		String createdBy,
+		Date modifiedAt,
+		String modifiedBy,
+		Date validTo,
+		String[] shortTexts
+	) {
+		this(
+			id,
+			createdAt == null ? 0L : createdAt.getTime(),
+			createdBy,
+			modifiedAt == null ? 0L : modifiedAt.getTime(),
+			modifiedBy,
+			validTo == null ? Long.MAX_VALUE : validTo.getTime(),
+			shortTexts == null ? NO_TEXTS : shortTexts.clone()
+		);
+	}
+
+	/**
+	 * Constructor. Takes ownership of the short texts.
+	 * 
+	 * @param id
+	 * @param createdAt
+	 * @param createdBy
+	 * @param modifiedAt
+	 * @param modifiedBy
+	 * @param validTo Long.MAX_VALUE if not set
+	 * @param shortTexts
+	 */
+	private TagSnapshot(
+		String id,
+		long createdAt,
+		String createdBy,
+		long modifiedAt,
+		String modifiedBy,
+		long validTo,
+		String[] shortTexts
+	) {
+		this.id = id;
+		this.createdAt = createdAt;
+		this.createdBy = createdBy;
+		this.modifiedAt = modifiedAt;
+		this.modifiedBy = modifiedBy;
+		this.validTo = validTo;
+		this.shortTexts = shortTexts;
+	}
+
+	/**
+	 * Create snapshot from code value entry. Each attribute is read
+	 * exactly once and the short texts are copied once.
+	 * 
+	 * @param entry
+	 * @return
+	 */
+	public static TagSnapshot valueOf(
+		CodeValueEntry entry
+	) {
+		List<String> texts = entry.getShortText();
+		Date createdAt = entry.getCreatedAt();
+		Date modifiedAt = entry.getModifiedAt();
+		Date validTo = entry.getValidTo();
+		return new TagSnapshot(
+			entry.refGetPath().getLastSegment().toClassicRepresentation(),
+			createdAt == null ? 0L : createdAt.getTime(),
+			entry.getCreatedBy().get(0),
+			modifiedAt == null ? 0L : modifiedAt.getTime(),
+			entry.getModifiedBy().get(0),
+			validTo == null ? Long.MAX_VALUE : validTo.getTime(),
+			texts.toArray(new String[texts.size()])
+		);
+	}
+
+	/**
+	 * @return the id
+	 */
+	public String getId() {
+		return this.id;
+	}
+
+	/**
+	 * @return the createdAt
+	 */
+	public Date getCreatedAt() {
+		return new Date(this.createdAt);
+	}
+
+	/**
+	 * @return the createdAt in milliseconds
+	 */
+	public long getCreatedAtTime() {
+		return this.createdAt;
+	}
+
+	/**
+	 * @return the createdBy
+	 */
+	public String getCreatedBy() {
+		return this.createdBy;
+	}
+
+	/**
+	 * @return the modifiedAt
+	 */
+	public Date getModifiedAt() {
+		return new Date(this.modifiedAt);
+	}
+
+	/**
+	 * @return the modifiedAt in milliseconds
+	 */
+	public long getModifiedAtTime() {
+		return this.modifiedAt;
+	}
+
+	/**
+	 * Get version of the tag. The version changes with each modification
+	 * of the tag or one of its texts.
+	 * 
+	 * @return the version as quoted entity tag
+	 */
+	public String getVersion() {
+		return "\"" + Long.toHexString(this.modifiedAt) + "\"";
+	}
+
+	/**
+	 * @return the modifiedBy
+	 */
+	public String getModifiedBy() {
+		return this.modifiedBy;
+	}
+
+	/**
+	 * @return the validTo or null if not set
+	 */
+	public Date getValidTo() {
+		return this.validTo == Long.MAX_VALUE ? null : new Date(this.validTo);
+	}
+
+	/**
+	 * Return true if the tag is not deleted at the given time.
+	 * 
+	 * @param now
+	 * @return
+	 */
+	public boolean isValid(
+		long now
+	) {
+		return this.validTo >= now;
+	}
+
+	/**
+	 * Get short text for the given locale index.
+	 * 
+	 * @param localeIndex
+	 * @return the text or the empty string if not set
+	 */
+	public String getShortText(
+		int localeIndex
+	) {
+		if(localeIndex < this.shortTexts.length && this.shortTexts[localeIndex] != null) {
+			return this.shortTexts[localeIndex];
+		} else {
+			return "";
+		}
+	}
+
+	/**
+	 * @return number of short text slots
+	 */
+	public int getShortTextCount() {
+		return this.shortTexts.length;
+	}
+
+}
@@ -0,0 +1,199 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Date;
+
+/**
+ * Reads tag snapshots written by {@link TagSnapshotWriter} from a channel.
+ *
+ */
+public class TagSnapshotReader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+	private final ReadableByteChannel channel;
+	private ByteBuffer buffer;
+	private int recordEnd;
+
+	/**
+	 * Constructor. Reads and validates the header.
+	 * 
+	 * @param channel
+	 * @throws IOException if the stream is not a tag snapshot stream
+	 */
+	public TagSnapshotReader(
+		ReadableByteChannel channel
+	) throws IOException {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buffer.flip();
+		this.ensureAvailable(6);
+		if(this.buffer.getInt() != TagSnapshotWriter.MAGIC) {
+			throw new IOException("Invalid tags snapshot");
+		}
+		short version = this.buffer.getShort();
+		if(version != TagSnapshotWriter.VERSION) {
+			throw new IOException("Unsupported tags snapshot version " + version);
+		}
+	}
+
+	/**
+	 * Read next snapshot.
+	 * 
+	 * @return the snapshot or null at the end of the stream
+	 * @throws IOException
+	 */
+	public TagSnapshot read(
+	) throws IOException {
+		this.ensureAvailable(4);
+		int length = this.buffer.getInt();
+		if(length == 0) {
+			return null;
+		}
+		if(length < 0 || length > MAX_RECORD_SIZE) {
+			throw new IOException("Invalid tags snapshot record length " + length);
+		}
+		this.ensureAvailable(length);
+		this.recordEnd = this.buffer.position() + length;
+		String id = this.getString();
+		long createdAt = this.getLong();
+		String createdBy = this.getString();
+		long modifiedAt = this.getLong();
+		String modifiedBy = this.getString();
+		long validTo = this.getLong();
+		int textCount = this.getInt();
+		if(textCount < 0 || textCount > (this.recordEnd - this.buffer.position()) / 4) {
+			throw new IOException("Invalid tags snapshot text count " + textCount);
+		}
+		String[] texts = new String[textCount];
+		for(int i = 0; i < texts.length; i++) {
+			texts[i] = this.getString();
+		}
+		if(this.buffer.position() != this.recordEnd) {
+			throw new IOException("Invalid tags snapshot record " + id);
+		}
+		return new TagSnapshot(
+			id,
+			new Date(createdAt),
+			createdBy,
+			new Date(modifiedAt),
+			modifiedBy,
+			validTo < 0 ? null : new Date(validTo),
+			texts
+		);
+	}
+
+	/**
+	 * Make sure the given number of bytes can be read from the current record.
+	 * 
+	 * @param size
+	 * @throws IOException
+	 */
+	private void ensureRecord(
+		int size
+	) throws IOException {
+		if(size > this.recordEnd - this.buffer.position()) {
+			throw new IOException("Truncated tags snapshot record");
+		}
+	}
+
+	/**
+	 * Get int of the current record.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private int getInt(
+	) throws IOException {
+		this.ensureRecord(4);
+		return this.buffer.getInt();
+	}
+
+	/**
+	 * Get long of the current record.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private long getLong(
+	) throws IOException {
+		this.ensureRecord(8);
+		return this.buffer.getLong();
+	}
+
+	/**
+	 * Get length prefixed string of the current record.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private String getString(
+	) throws IOException {
+		int length = this.getInt();
+		if(length == -1) {
+			return null;
+		}
+		if(length < 0) {
+			throw new IOException("Invalid tags snapshot string length " + length);
+		}
+		this.ensureRecord(length);
+		String value = new String(this.buffer.array(), this.buffer.arrayOffset() + this.buffer.position(), length, TagSnapshotWriter.UTF8);
+		this.buffer.position(this.buffer.position() + length);
+		return value;
+	}
+
+	/**
+	 * Make sure the given number of bytes can be read from the buffer.
+	 * 
+	 * @param size
+	 * @throws IOException
+	 */
+	private void ensureAvailable(
+		int size
+	) throws IOException {
+		if(this.buffer.remaining() >= size) {
+			return;
+		}
+		if(this.buffer.capacity() < size) {
+			ByteBuffer buffer = ByteBuffer.allocate(size);
+			buffer.put(this.buffer);
+			this.buffer = buffer;
+		} else {
+			this.buffer.compact();
+		}
+		while(this.buffer.position() < size) {
+			if(this.channel.read(this.buffer) < 0) {
+				throw new EOFException("Unexpected end of tags snapshot");
+			}
+		}
+		this.buffer.flip();
+	}
+
+}
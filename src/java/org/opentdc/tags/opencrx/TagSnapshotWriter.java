@@ -0,0 +1,192 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * Writes tag snapshots to a channel in a compact binary format. The
+ * stream starts with a header (magic, version) followed by one length
+ * prefixed record per tag and a zero length terminator:
+ * <pre>
+ * record := id createdAt createdBy modifiedAt modifiedBy validTo textCount text*
+ * </pre>
+ * Strings are written as int length and UTF-8 bytes (length -1 for null),
+ * timestamps as long milliseconds (-1 for a missing validTo).
+ *
+ */
+public class TagSnapshotWriter {
+
+	public static final int MAGIC = 0x54414753;
+	public static final short VERSION = 1;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private ByteBuffer buffer;
+	private int count = 0;
+
+	/**
+	 * Constructor. Writes the header.
+	 * 
+	 * @param channel
+	 */
+	public TagSnapshotWriter(
+		WritableByteChannel channel
+	) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buffer.putInt(MAGIC).putShort(VERSION);
+	}
+
+	/**
+	 * Write snapshot.
+	 * 
+	 * @param snapshot
+	 * @throws IOException
+	 */
+	public void write(
+		TagSnapshot snapshot
+	) throws IOException {
+		byte[] id = encode(snapshot.getId());
+		byte[] createdBy = encode(snapshot.getCreatedBy());
+		byte[] modifiedBy = encode(snapshot.getModifiedBy());
+		byte[][] texts = new byte[snapshot.getShortTextCount()][];
+		int length = sizeOf(id) + 8 + sizeOf(createdBy) + 8 + sizeOf(modifiedBy) + 8 + 4;
+		for(int i = 0; i < texts.length; i++) {
+			texts[i] = encode(snapshot.getShortText(i));
+			length += sizeOf(texts[i]);
+		}
+		this.ensureCapacity(4 + length);
+		this.buffer.putInt(length);
+		this.put(id);
+		this.buffer.putLong(snapshot.getCreatedAtTime());
+		this.put(createdBy);
+		this.buffer.putLong(snapshot.getModifiedAtTime());
+		this.put(modifiedBy);
+		Date validTo = snapshot.getValidTo();
+		this.buffer.putLong(validTo == null ? -1L : validTo.getTime());
+		this.buffer.putInt(texts.length);
+		for(byte[] text: texts) {
+			this.put(text);
+		}
+		this.count++;
+	}
+
+	/**
+	 * Write terminator and flush.
+	 * 
+	 * @throws IOException
+	 */
+	public void finish(
+	) throws IOException {
+		this.ensureCapacity(4);
+		this.buffer.putInt(0);
+		this.drain();
+	}
+
+	/**
+	 * @return the number of written snapshots
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Encode string.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static byte[] encode(
+		String value
+	) {
+		return value == null ? null : value.getBytes(UTF8);
+	}
+
+	/**
+	 * Get size of length prefixed bytes.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static int sizeOf(
+		byte[] value
+	) {
+		return 4 + (value == null ? 0 : value.length);
+	}
+
+	/**
+	 * Put length prefixed bytes.
+	 * 
+	 * @param value
+	 */
+	private void put(
+		byte[] value
+	) {
+		if(value == null) {
+			this.buffer.putInt(-1);
+		} else {
+			this.buffer.putInt(value.length);
+			this.buffer.put(value);
+		}
+	}
+
+	/**
+	 * Make sure the buffer has room for the given number of bytes.
+	 * 
+	 * @param size
+	 * @throws IOException
+	 */
+	private void ensureCapacity(
+		int size
+	) throws IOException {
+		if(this.buffer.remaining() < size) {
+			this.drain();
+			if(this.buffer.capacity() < size) {
+				this.buffer = ByteBuffer.allocate(size);
+			}
+		}
+	}
+
+	/**
+	 * Write buffer to channel.
+	 * 
+	 * @throws IOException
+	 */
+	private void drain(
+	) throws IOException {
+		this.buffer.flip();
+		while(this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+}
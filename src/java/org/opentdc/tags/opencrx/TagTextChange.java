@@ -0,0 +1,113 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import org.opentdc.util.LanguageCode;
+
+/**
+ * Change of a single localized text of a tag. An empty or null text
+ * deletes the localized text.
+ *
+ */
+public class TagTextChange {
+
+	private String tagId;
+	private LanguageCode languageCode;
+	private String text;
+
+	/**
+	 * Constructor.
+	 * 
+	 */
+	public TagTextChange(
+	) {
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param tagId
+	 * @param languageCode
+	 * @param text
+	 */
+	public TagTextChange(
+		String tagId,
+		LanguageCode languageCode,
+		String text
+	) {
+		this.tagId = tagId;
+		this.languageCode = languageCode;
+		this.text = text;
+	}
+
+	/**
+	 * @return the tagId
+	 */
+	public String getTagId() {
+		return this.tagId;
+	}
+
+	/**
+	 * @param tagId the tagId to set
+	 */
+	public void setTagId(String tagId) {
+		this.tagId = tagId;
+	}
+
+	/**
+	 * @return the languageCode
+	 */
+	public LanguageCode getLanguageCode() {
+		return this.languageCode;
+	}
+
+	/**
+	 * @param languageCode the languageCode to set
+	 */
+	public void setLanguageCode(LanguageCode languageCode) {
+		this.languageCode = languageCode;
+	}
+
+	/**
+	 * @return the text
+	 */
+	public String getText() {
+		return this.text;
+	}
+
+	/**
+	 * @param text the text to set
+	 */
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @return true if this change deletes the localized text
+	 */
+	public boolean isDelete() {
+		return this.text == null || this.text.isEmpty();
+	}
+
+}
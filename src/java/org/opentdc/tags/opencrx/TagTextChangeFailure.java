@@ -0,0 +1,74 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+/**
+ * Failed text change of a batch.
+ *
+ */
+public class TagTextChangeFailure {
+
+	private final int index;
+	private final TagTextChange change;
+	private final String message;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param index position of the change in the batch
+	 * @param change
+	 * @param message
+	 */
+	public TagTextChangeFailure(
+		int index,
+		TagTextChange change,
+		String message
+	) {
+		this.index = index;
+		this.change = change;
+		this.message = message;
+	}
+
+	/**
+	 * @return the position of the change in the batch
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * @return the change
+	 */
+	public TagTextChange getChange() {
+		return this.change;
+	}
+
+	/**
+	 * @return the message
+	 */
+	public String getMessage() {
+		return this.message;
+	}
+
+}
@@ -0,0 +1,92 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.List;
+
+import org.opentdc.tags.SingleLangTag;
+
+/**
+ * Page of tag texts.
+ *
+ */
+public class TagTextPage {
+
+	private final List<SingleLangTag> tagTexts;
+	private final String nextCursor;
+	private final boolean hasMore;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param tagTexts
+	 * @param nextCursor
+	 */
+	public TagTextPage(
+		List<SingleLangTag> tagTexts,
+		String nextCursor
+	) {
+		this(tagTexts, nextCursor, nextCursor != null);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param tagTexts
+	 * @param nextCursor
+	 * @param hasMore
+	 */
+	public TagTextPage(
+		List<SingleLangTag> tagTexts,
+		String nextCursor,
+		boolean hasMore
+	) {
+		this.tagTexts = tagTexts;
+		this.nextCursor = nextCursor;
+		this.hasMore = hasMore;
+	}
+
+	/**
+	 * @return the tag texts
+	 */
+	public List<SingleLangTag> getTagTexts() {
+		return this.tagTexts;
+	}
+
+	/**
+	 * @return the cursor of the next page or null if this is the last page
+	 * or the page was not requested by cursor
+	 */
+	public String getNextCursor() {
+		return this.nextCursor;
+	}
+
+	/**
+	 * @return true if more rows follow this page
+	 */
+	public boolean hasMore() {
+		return this.hasMore;
+	}
+
+}
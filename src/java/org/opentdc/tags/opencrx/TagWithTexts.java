@@ -0,0 +1,92 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opentdc.service.LocalizedTextModel;
+import org.opentdc.tags.TagModel;
+
+/**
+ * Tag together with its localized texts.
+ *
+ */
+public class TagWithTexts {
+
+	private TagModel tag;
+	private List<LocalizedTextModel> localizedTexts;
+
+	/**
+	 * Constructor.
+	 * 
+	 */
+	public TagWithTexts(
+	) {
+		this.localizedTexts = new ArrayList<LocalizedTextModel>();
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param tag
+	 * @param localizedTexts
+	 */
+	public TagWithTexts(
+		TagModel tag,
+		List<LocalizedTextModel> localizedTexts
+	) {
+		this.tag = tag;
+		this.localizedTexts = localizedTexts;
+	}
+
+	/**
+	 * @return the tag
+	 */
+	public TagModel getTag() {
+		return this.tag;
+	}
+
+	/**
+	 * @param tag the tag to set
+	 */
+	public void setTag(TagModel tag) {
+		this.tag = tag;
+	}
+
+	/**
+	 * @return the localized texts
+	 */
+	public List<LocalizedTextModel> getLocalizedTexts() {
+		return this.localizedTexts;
+	}
+
+	/**
+	 * @param localizedTexts the localized texts to set
+	 */
+	public void setLocalizedTexts(List<LocalizedTextModel> localizedTexts) {
+		this.localizedTexts = localizedTexts;
+	}
+
+}
@@ -0,0 +1,406 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.openmdx.base.exception.ServiceException;
+
+/**
+ * Metrics of the tags service: latency histograms per operation and
+ * counters for backend round-trips. Recording does not lock so that
+ * the metrics can be left enabled in production.
+ *
+ */
+public class TagsMetrics implements TagsMetricsMBean {
+
+	private final ConcurrentMap<String,LatencyHistogram> latencies = new ConcurrentHashMap<String,LatencyHistogram>();
+	private final LatencyHistogram listPageRows = new LatencyHistogram();
+	private final AtomicLong queryCount = new AtomicLong();
+	private final AtomicLong lookupCount = new AtomicLong();
+	private final AtomicLong transactionCount = new AtomicLong();
+	private final AtomicLong rollbackCount = new AtomicLong();
+	private final AtomicLong conflictCount = new AtomicLong();
+	private final AtomicLong retryCount = new AtomicLong();
+	private final AtomicLong coalescedLoadCount = new AtomicLong();
+	private final AtomicLong purgedCount = new AtomicLong();
+	private final AtomicLong purgeBatchCount = new AtomicLong();
+	private final AtomicLong listRowCount = new AtomicLong();
+	private volatile boolean ready = true;
+	private ObjectName objectName = null;
+
+	/**
+	 * Get start time of an operation.
+	 * 
+	 * @return
+	 */
+	public long start(
+	) {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record latency of operation.
+	 * 
+	 * @param operation
+	 * @param started the start time as returned by start()
+	 */
+	public void record(
+		String operation,
+		long started
+	) {
+		LatencyHistogram histogram = this.latencies.get(operation);
+		if(histogram == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = this.latencies.putIfAbsent(operation, newHistogram);
+			if(histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		histogram.record(System.nanoTime() - started);
+	}
+
+	/**
+	 * Set whether the service is ready to serve requests.
+	 * 
+	 * @param ready
+	 */
+	public void setReady(
+		boolean ready
+	) {
+		this.ready = ready;
+	}
+
+	/**
+	 * Count a query.
+	 * 
+	 */
+	public void countQuery(
+	) {
+		this.queryCount.incrementAndGet();
+	}
+
+	/**
+	 * Count a lookup by id.
+	 * 
+	 */
+	public void countLookup(
+	) {
+		this.lookupCount.incrementAndGet();
+	}
+
+	/**
+	 * Count a transaction.
+	 * 
+	 */
+	public void countTransaction(
+	) {
+		this.transactionCount.incrementAndGet();
+	}
+
+	/**
+	 * Count a rollback.
+	 * 
+	 */
+	public void countRollback(
+	) {
+		this.rollbackCount.incrementAndGet();
+	}
+
+	/**
+	 * Count a concurrent modification conflict.
+	 * 
+	 */
+	public void countConflict(
+	) {
+		this.conflictCount.incrementAndGet();
+	}
+
+	/**
+	 * Count a retried transaction.
+	 * 
+	 */
+	public void countRetry(
+	) {
+		this.retryCount.incrementAndGet();
+	}
+
+	/**
+	 * Count a tag load joining a load already in flight.
+	 * 
+	 */
+	public void countCoalescedLoad(
+	) {
+		this.coalescedLoadCount.incrementAndGet();
+	}
+
+	/**
+	 * Count a committed purge batch.
+	 * 
+	 * @param purged number of tags purged by the batch
+	 */
+	public void countPurgeBatch(
+		int purged
+	) {
+		this.purgeBatchCount.incrementAndGet();
+		this.purgedCount.addAndGet(purged);
+	}
+
+	/**
+	 * Count a returned list page.
+	 * 
+	 * @param rows number of rows of the page
+	 */
+	public void countListPage(
+		int rows
+	) {
+		this.listPageRows.record(rows);
+		this.listRowCount.addAndGet(rows);
+	}
+
+	/**
+	 * Get latency histogram of operation.
+	 * 
+	 * @param operation
+	 * @return the histogram or null if the operation was not recorded yet
+	 */
+	public LatencyHistogram getLatency(
+		String operation
+	) {
+		return this.latencies.get(operation);
+	}
+
+	/**
+	 * @return the histogram of rows per list page
+	 */
+	public LatencyHistogram getListPageRows() {
+		return this.listPageRows;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getQueryCount()
+	 */
+	@Override
+	public long getQueryCount() {
+		return this.queryCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getLookupCount()
+	 */
+	@Override
+	public long getLookupCount() {
+		return this.lookupCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getTransactionCount()
+	 */
+	@Override
+	public long getTransactionCount() {
+		return this.transactionCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getRollbackCount()
+	 */
+	@Override
+	public long getRollbackCount() {
+		return this.rollbackCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getConflictCount()
+	 */
+	@Override
+	public long getConflictCount() {
+		return this.conflictCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getRetryCount()
+	 */
+	@Override
+	public long getRetryCount() {
+		return this.retryCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getCoalescedLoadCount()
+	 */
+	@Override
+	public long getCoalescedLoadCount() {
+		return this.coalescedLoadCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#isReady()
+	 */
+	@Override
+	public boolean isReady() {
+		return this.ready;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getPurgedCount()
+	 */
+	@Override
+	public long getPurgedCount() {
+		return this.purgedCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getPurgeBatchCount()
+	 */
+	@Override
+	public long getPurgeBatchCount() {
+		return this.purgeBatchCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getListPageCount()
+	 */
+	@Override
+	public long getListPageCount() {
+		return this.listPageRows.getCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getListRowCount()
+	 */
+	@Override
+	public long getListRowCount() {
+		return this.listRowCount.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getOperationStatistics()
+	 */
+	@Override
+	public String[] getOperationStatistics() {
+		List<String> operations = new ArrayList<String>(this.latencies.keySet());
+		Collections.sort(operations);
+		List<String> statistics = new ArrayList<String>(operations.size());
+		for(String operation: operations) {
+			LatencyHistogram histogram = this.latencies.get(operation);
+			statistics.add(
+				String.format(
+					Locale.ROOT,
+					"%s count=%d mean=%.1fus p50=%dus p90=%dus p99=%dus max=%dus",
+					operation,
+					histogram.getCount(),
+					histogram.getMean() / 1000.0,
+					histogram.getValueAtPercentile(50.0) / 1000L,
+					histogram.getValueAtPercentile(90.0) / 1000L,
+					histogram.getValueAtPercentile(99.0) / 1000L,
+					histogram.getMax() / 1000L
+				)
+			);
+		}
+		return statistics.toArray(new String[statistics.size()]);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#getLatencyAtPercentile(java.lang.String, double)
+	 */
+	@Override
+	public long getLatencyAtPercentile(
+		String operation,
+		double percentile
+	) {
+		LatencyHistogram histogram = this.latencies.get(operation);
+		return histogram == null ? 0L : histogram.getValueAtPercentile(percentile) / 1000L;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opentdc.tags.opencrx.TagsMetricsMBean#reset()
+	 */
+	@Override
+	public void reset(
+	) {
+		for(Map.Entry<String,LatencyHistogram> entry: this.latencies.entrySet()) {
+			entry.getValue().reset();
+		}
+		this.listPageRows.reset();
+		this.queryCount.set(0L);
+		this.lookupCount.set(0L);
+		this.transactionCount.set(0L);
+		this.rollbackCount.set(0L);
+		this.conflictCount.set(0L);
+		this.retryCount.set(0L);
+		this.coalescedLoadCount.set(0L);
+		this.purgedCount.set(0L);
+		this.purgeBatchCount.set(0L);
+		this.listRowCount.set(0L);
+	}
+
+	/**
+	 * Register metrics at the platform MBean server.
+	 * 
+	 * @param name the name of the service provider
+	 */
+	public synchronized void register(
+		String name
+	) {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("org.opentdc.tags.opencrx:type=TagsMetrics,name=" + ObjectName.quote(name));
+			if(mbeanServer.isRegistered(objectName)) {
+				mbeanServer.unregisterMBean(objectName);
+			}
+			mbeanServer.registerMBean(this, objectName);
+			this.objectName = objectName;
+		} catch(Exception e) {
+			new ServiceException(e).log();
+		}
+	}
+
+	/**
+	 * Unregister metrics from the platform MBean server.
+	 * 
+	 */
+	public synchronized void unregister(
+	) {
+		if(this.objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+			} catch(Exception e) {
+				new ServiceException(e).log();
+			}
+			this.objectName = null;
+		}
+	}
+
+}
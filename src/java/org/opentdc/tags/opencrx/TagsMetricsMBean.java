@@ -0,0 +1,115 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+/**
+ * JMX interface of the tags service metrics.
+ *
+ */
+public interface TagsMetricsMBean {
+
+	/**
+	 * @return true if the service is ready to serve requests, i.e. its warm-up is completed or disabled
+	 */
+	boolean isReady();
+
+	/**
+	 * @return number of entry and container queries
+	 */
+	long getQueryCount();
+
+	/**
+	 * @return number of entry lookups by id
+	 */
+	long getLookupCount();
+
+	/**
+	 * @return number of started transactions
+	 */
+	long getTransactionCount();
+
+	/**
+	 * @return number of rolled back transactions
+	 */
+	long getRollbackCount();
+
+	/**
+	 * @return number of transactions failed because of a concurrent modification
+	 */
+	long getConflictCount();
+
+	/**
+	 * @return number of retried transactions
+	 */
+	long getRetryCount();
+
+	/**
+	 * @return number of tag loads joining a load already in flight
+	 */
+	long getCoalescedLoadCount();
+
+	/**
+	 * @return number of purged deleted tags
+	 */
+	long getPurgedCount();
+
+	/**
+	 * @return number of committed purge batches
+	 */
+	long getPurgeBatchCount();
+
+	/**
+	 * @return number of returned list pages
+	 */
+	long getListPageCount();
+
+	/**
+	 * @return number of returned list rows
+	 */
+	long getListRowCount();
+
+	/**
+	 * @return one line per operation with count, mean and percentiles of its latency in microseconds
+	 */
+	String[] getOperationStatistics();
+
+	/**
+	 * Get latency of operation at percentile.
+	 * 
+	 * @param operation
+	 * @param percentile between 0.0 and 100.0
+	 * @return the latency in microseconds
+	 */
+	long getLatencyAtPercentile(
+		String operation,
+		double percentile
+	);
+
+	/**
+	 * Reset all metrics.
+	 * 
+	 */
+	void reset();
+
+}
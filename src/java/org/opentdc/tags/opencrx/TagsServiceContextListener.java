@@ -0,0 +1,94 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Starts the OpencrxServiceProviders of a servlet context when the
+ * context is initialized and closes them when the context is destroyed,
+ * i.e. stops their background threads and unregisters their metrics.
+ * Declare it as listener in the web.xml of the tags service.
+ *
+ */
+public class TagsServiceContextListener implements ServletContextListener {
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextInitialized(
+		ServletContextEvent event
+	) {
+		ServletContext context = event.getServletContext();
+		for(String name: this.getProviderNames(context)) {
+			Object provider = context.getAttribute(name);
+			if(provider instanceof OpencrxServiceProvider) {
+				((OpencrxServiceProvider)provider).start();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextDestroyed(
+		ServletContextEvent event
+	) {
+		ServletContext context = event.getServletContext();
+		for(String name: this.getProviderNames(context)) {
+			Object provider = context.getAttribute(name);
+			context.removeAttribute(name);
+			if(provider instanceof OpencrxServiceProvider) {
+				((OpencrxServiceProvider)provider).close();
+			}
+		}
+	}
+
+	/**
+	 * Get the names of the context attributes holding providers.
+	 * 
+	 * @param context
+	 * @return
+	 */
+	private List<String> getProviderNames(
+		ServletContext context
+	) {
+		List<String> names = new ArrayList<String>();
+		for(String name: Collections.list(context.getAttributeNames())) {
+			if(name.startsWith(OpencrxServiceProvider.CONTEXT_ATTRIBUTE_PREFIX)) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+}
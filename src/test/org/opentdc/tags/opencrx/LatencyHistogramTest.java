@@ -0,0 +1,85 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of LatencyHistogram.
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testSmallValues(
+	) {
+		for(int value = 0; value < 8; value++) {
+			assertEquals(value, LatencyHistogram.bucketOf(value));
+			assertEquals(value, LatencyHistogram.highestValueOf(value));
+		}
+		assertEquals(0, LatencyHistogram.bucketOf(-1L));
+	}
+
+	@Test
+	public void testBucketBoundaries(
+	) {
+		assertEquals(8, LatencyHistogram.bucketOf(8L));
+		assertEquals(8, LatencyHistogram.bucketOf(9L));
+		assertEquals(9, LatencyHistogram.bucketOf(10L));
+		assertEquals(9L, LatencyHistogram.highestValueOf(8));
+		long previous = -1L;
+		for(int bucket = 0; bucket < 62 * 4 - 1; bucket++) {
+			long highest = LatencyHistogram.highestValueOf(bucket);
+			assertTrue(highest > previous);
+			assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+			assertEquals(bucket + 1, LatencyHistogram.bucketOf(highest + 1));
+			previous = highest;
+		}
+		assertEquals(62 * 4 - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testPercentiles(
+	) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(long value = 1; value <= 100; value++) {
+			histogram.record(value);
+		}
+		assertEquals(100L, histogram.getCount());
+		assertEquals(50.5, histogram.getMean(), 0.0);
+		assertEquals(100L, histogram.getMax());
+		// 50 falls into the bucket 48..55
+		assertEquals(55L, histogram.getValueAtPercentile(50.0));
+		// The highest bucket is capped at the maximum
+		assertEquals(100L, histogram.getValueAtPercentile(100.0));
+		assertEquals(1L, histogram.getValueAtPercentile(0.0));
+		histogram.reset();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getValueAtPercentile(50.0));
+	}
+
+}
@@ -0,0 +1,99 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.opentdc.service.exception.ValidationException;
+
+/**
+ * Tests of ListCursor.
+ *
+ */
+public class ListCursorTest {
+
+	@Test
+	public void testEncodeDecode(
+	) {
+		ListCursor cursor = ListCursor.decode(new ListCursor(1234567890123L, "a|b", 3).encode());
+		assertEquals(1234567890123L, cursor.getTime());
+		assertEquals("a|b", cursor.getId());
+		assertEquals(3, cursor.getConsumedRows());
+	}
+
+	@Test
+	public void testEncodeDecodeStart(
+	) {
+		ListCursor cursor = ListCursor.decode(new ListCursor(0L, "", 0).encode());
+		assertEquals(0L, cursor.getTime());
+		assertEquals("", cursor.getId());
+		assertEquals(0, cursor.getConsumedRows());
+	}
+
+	@Test
+	public void testTies(
+	) {
+		ListCursor cursor = new ListCursor(1000L, "m", 2);
+		// Entries with equal timestamps are ordered by id
+		assertTrue(cursor.compareTo(1000L, "a") < 0);
+		assertEquals(0, cursor.compareTo(1000L, "m"));
+		assertTrue(cursor.compareTo(1000L, "z") > 0);
+		assertEquals(3, cursor.getConsumedRows(1000L, "a", 3));
+		assertEquals(2, cursor.getConsumedRows(1000L, "m", 3));
+		assertEquals(1, cursor.getConsumedRows(1000L, "m", 1));
+		assertEquals(0, cursor.getConsumedRows(1000L, "z", 3));
+		// The timestamp takes precedence over the id
+		assertEquals(3, cursor.getConsumedRows(999L, "z", 3));
+		assertEquals(0, cursor.getConsumedRows(1001L, "a", 3));
+	}
+
+	@Test
+	public void testTiesAfterDecode(
+	) {
+		ListCursor cursor = ListCursor.decode(new ListCursor(1000L, "m", 1).encode());
+		assertEquals(1, cursor.getConsumedRows(1000L, "m", 2));
+		assertEquals(0, cursor.getConsumedRows(1000L, "n", 2));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testDecodeNotHex(
+	) {
+		ListCursor.decode("xyz");
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testDecodeMissingFields(
+	) {
+		ListCursor.decode(new ListCursor(1000L, "m", 1).encode().substring(0, 4));
+	}
+
+	@Test(expected = ValidationException.class)
+	public void testDecodeNegativeRows(
+	) {
+		ListCursor.decode(new ListCursor(1000L, "m", -1).encode());
+	}
+
+}
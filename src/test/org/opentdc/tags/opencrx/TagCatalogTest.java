@@ -0,0 +1,129 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests of TagCatalog.
+ *
+ */
+public class TagCatalogTest {
+
+	/**
+	 * Create snapshot.
+	 * 
+	 * @param id
+	 * @param modifiedAt
+	 * @return
+	 */
+	private static TagSnapshot newSnapshot(
+		String id,
+		long modifiedAt
+	) {
+		return new TagSnapshot(id, new Date(0L), "test", new Date(modifiedAt), "test", null, new String[]{"text" + modifiedAt});
+	}
+
+	@Test
+	public void testNewerSnapshotWins(
+	) {
+		TagCatalog catalog = new TagCatalog(10, 0L);
+		catalog.put(newSnapshot("t", 200L));
+		catalog.put(newSnapshot("t", 100L));
+		assertEquals(200L, catalog.get("t").getModifiedAtTime());
+		catalog.put(newSnapshot("t", 300L));
+		assertEquals(300L, catalog.get("t").getModifiedAtTime());
+		catalog.put(newSnapshot("t", 300L));
+		assertEquals(300L, catalog.get("t").getModifiedAtTime());
+		assertEquals(1, catalog.size());
+	}
+
+	@Test
+	public void testRemoveAndClear(
+	) {
+		TagCatalog catalog = new TagCatalog(10, 0L);
+		catalog.put(newSnapshot("a", 1L));
+		catalog.put(newSnapshot("b", 1L));
+		catalog.remove("a");
+		assertNull(catalog.get("a"));
+		assertNotNull(catalog.get("b"));
+		catalog.clear();
+		assertEquals(0, catalog.size());
+	}
+
+	@Test
+	public void testEviction(
+	) {
+		TagCatalog catalog = new TagCatalog(10, 0L);
+		for(int i = 0; i < 10; i++) {
+			catalog.put(newSnapshot("t" + i, 1L));
+		}
+		assertEquals(10, catalog.size());
+		assertEquals(0L, catalog.getEvictionCount());
+		// Access the oldest entry so that it is the most recently used one
+		assertNotNull(catalog.get("t0"));
+		catalog.put(newSnapshot("t10", 1L));
+		// Shrunk to 90% of the maximum size, least recently used first
+		assertEquals(9, catalog.size());
+		assertEquals(2L, catalog.getEvictionCount());
+		assertNotNull(catalog.get("t0"));
+		assertNull(catalog.get("t1"));
+		assertNull(catalog.get("t2"));
+		assertNotNull(catalog.get("t3"));
+		assertNotNull(catalog.get("t10"));
+	}
+
+	@Test
+	public void testExpiration(
+	) throws InterruptedException {
+		TagCatalog catalog = new TagCatalog(10, 50L);
+		catalog.put(newSnapshot("t", 200L));
+		assertNotNull(catalog.get("t"));
+		Thread.sleep(100L);
+		assertNull(catalog.get("t"));
+		// An expired snapshot does not block an older one
+		catalog.put(newSnapshot("u", 200L));
+		Thread.sleep(100L);
+		catalog.put(newSnapshot("u", 100L));
+		assertEquals(100L, catalog.get("u").getModifiedAtTime());
+	}
+
+	@Test
+	public void testHitAndMissCount(
+	) {
+		TagCatalog catalog = new TagCatalog(10, 0L);
+		catalog.put(newSnapshot("t", 1L));
+		catalog.get("t");
+		catalog.get("u");
+		assertEquals(1L, catalog.getHitCount());
+		assertEquals(1L, catalog.getMissCount());
+	}
+
+}
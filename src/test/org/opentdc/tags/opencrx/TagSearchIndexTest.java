@@ -0,0 +1,156 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentdc.tags.SingleLangTag;
+import org.opentdc.util.LanguageCode;
+
+/**
+ * Tests of TagSearchIndex.
+ *
+ */
+public class TagSearchIndexTest {
+
+	private static final LanguageCode[] LANGUAGES = LanguageCode.values();
+	private static final int[] LOCALE_INDEXES = new int[LANGUAGES.length];
+
+	static {
+		for(int i = 0; i < LOCALE_INDEXES.length; i++) {
+			LOCALE_INDEXES[i] = i;
+		}
+	}
+
+	private TagSearchIndex index;
+
+	/**
+	 * Create snapshot with a text in one language.
+	 * 
+	 * @param id
+	 * @param createdAt
+	 * @param lang
+	 * @param text
+	 * @param validTo
+	 * @return
+	 */
+	private static TagSnapshot newSnapshot(
+		String id,
+		long createdAt,
+		LanguageCode lang,
+		String text,
+		Date validTo
+	) {
+		String[] texts = new String[LANGUAGES.length];
+		texts[lang.ordinal()] = text;
+		return new TagSnapshot(id, new Date(createdAt), "test", new Date(createdAt), "test", validTo, texts);
+	}
+
+	/**
+	 * Get texts of page.
+	 * 
+	 * @param page
+	 * @return
+	 */
+	private static List<String> textsOf(
+		TagTextPage page
+	) {
+		List<String> texts = new ArrayList<String>();
+		for(SingleLangTag tagText: page.getTagTexts()) {
+			texts.add(tagText.getText());
+		}
+		return texts;
+	}
+
+	@Before
+	public void setUp(
+	) {
+		this.index = new TagSearchIndex();
+		this.index.update(newSnapshot("t1", 1L, LanguageCode.DE, "Élan", null), LOCALE_INDEXES);
+		this.index.update(newSnapshot("t2", 2L, LanguageCode.DE, "elch", null), LOCALE_INDEXES);
+		this.index.update(newSnapshot("t3", 3L, LanguageCode.DE, "Esel", null), LOCALE_INDEXES);
+		this.index.update(newSnapshot("t4", 4L, LanguageCode.EN, "ELEPHANT", null), LOCALE_INDEXES);
+	}
+
+	@Test
+	public void testNormalize(
+	) {
+		assertEquals("elan", TagSearchIndex.normalize("Élan"));
+		assertEquals("uber", TagSearchIndex.normalize("ÜBER"));
+	}
+
+	@Test
+	public void testSearchIgnoresCaseAndAccents(
+	) {
+		assertEquals(3, this.index.search(null, "EL", 0, 10).getTagTexts().size());
+		List<String> de = textsOf(this.index.search(LanguageCode.DE, "él", 0, 10));
+		assertEquals(2, de.size());
+		assertTrue(de.contains("Élan"));
+		assertTrue(de.contains("elch"));
+		assertEquals(1, this.index.search(LanguageCode.EN, "éléph", 0, 10).getTagTexts().size());
+		assertEquals(0, this.index.search(LanguageCode.DE, "elk", 0, 10).getTagTexts().size());
+	}
+
+	@Test
+	public void testSearchPaging(
+	) {
+		TagTextPage first = this.index.search(LanguageCode.DE, "e", 0, 2);
+		assertEquals(2, first.getTagTexts().size());
+		assertTrue(first.hasMore());
+		TagTextPage second = this.index.search(LanguageCode.DE, "e", 2, 2);
+		assertEquals(1, second.getTagTexts().size());
+		assertFalse(second.hasMore());
+	}
+
+	@Test
+	public void testUpdateAndRemove(
+	) {
+		this.index.update(newSnapshot("t2", 2L, LanguageCode.DE, "Hirsch", null), LOCALE_INDEXES);
+		assertEquals(0, this.index.search(LanguageCode.DE, "elch", 0, 10).getTagTexts().size());
+		assertEquals(1, this.index.search(LanguageCode.DE, "hir", 0, 10).getTagTexts().size());
+		this.index.update(newSnapshot("t3", 3L, LanguageCode.DE, "Esel", new Date(1L)), LOCALE_INDEXES);
+		assertEquals(0, this.index.search(LanguageCode.DE, "esel", 0, 10).getTagTexts().size());
+		this.index.remove("t1");
+		assertEquals(0, this.index.search(null, "elan", 0, 10).getTagTexts().size());
+		assertEquals(2, this.index.size());
+	}
+
+	@Test
+	public void testListByCreation(
+	) {
+		List<String> de = textsOf(this.index.list(LanguageCode.DE, 0, 10));
+		assertEquals(3, de.size());
+		assertEquals("Élan", de.get(0));
+		assertEquals("Esel", de.get(2));
+	}
+
+}
@@ -0,0 +1,189 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Arbalo AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.opentdc.tags.opencrx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests of TagSnapshotWriter and TagSnapshotReader.
+ *
+ */
+public class TagSnapshotReaderTest {
+
+	/**
+	 * Write snapshots.
+	 * 
+	 * @param snapshots
+	 * @return the stream
+	 * @throws IOException
+	 */
+	private static byte[] write(
+		TagSnapshot... snapshots
+	) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TagSnapshotWriter writer = new TagSnapshotWriter(Channels.newChannel(out));
+		for(TagSnapshot snapshot: snapshots) {
+			writer.write(snapshot);
+		}
+		writer.finish();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Create reader.
+	 * 
+	 * @param bytes
+	 * @return
+	 * @throws IOException
+	 */
+	private static TagSnapshotReader newReader(
+		byte[] bytes
+	) throws IOException {
+		return new TagSnapshotReader(Channels.newChannel(new ByteArrayInputStream(bytes)));
+	}
+
+	/**
+	 * Create stream with a header followed by the given bytes.
+	 * 
+	 * @param record
+	 * @return
+	 */
+	private static byte[] withHeader(
+		byte[] record
+	) {
+		return ByteBuffer.allocate(6 + record.length)
+			.putInt(TagSnapshotWriter.MAGIC)
+			.putShort(TagSnapshotWriter.VERSION)
+			.put(record)
+			.array();
+	}
+
+	/**
+	 * Assert that reading the stream fails.
+	 * 
+	 * @param bytes
+	 */
+	private static void assertInvalid(
+		byte[] bytes
+	) {
+		try {
+			TagSnapshotReader reader = newReader(bytes);
+			while(reader.read() != null) {
+			}
+			fail("IOException expected");
+		} catch(IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRoundTrip(
+	) throws IOException {
+		TagSnapshot active = new TagSnapshot("a1", new Date(1000L), "alice", new Date(2000L), "bob", null, new String[]{"Tag", null, "Étiquette"});
+		TagSnapshot deleted = new TagSnapshot("d2", new Date(3000L), "carol", new Date(4000L), null, new Date(5000L), new String[0]);
+		TagSnapshotReader reader = newReader(write(active, deleted));
+		TagSnapshot first = reader.read();
+		assertEquals("a1", first.getId());
+		assertEquals(1000L, first.getCreatedAtTime());
+		assertEquals("alice", first.getCreatedBy());
+		assertEquals(2000L, first.getModifiedAtTime());
+		assertEquals("bob", first.getModifiedBy());
+		assertNull(first.getValidTo());
+		assertEquals(3, first.getShortTextCount());
+		assertEquals(Arrays.asList("Tag", "", "Étiquette"), Arrays.asList(first.getShortText(0), first.getShortText(1), first.getShortText(2)));
+		TagSnapshot second = reader.read();
+		assertEquals("d2", second.getId());
+		assertNull(second.getModifiedBy());
+		assertEquals(new Date(5000L), second.getValidTo());
+		assertEquals(0, second.getShortTextCount());
+		assertNull(reader.read());
+	}
+
+	@Test
+	public void testEmpty(
+	) throws IOException {
+		assertNull(newReader(write()).read());
+	}
+
+	@Test
+	public void testTruncated(
+	) throws IOException {
+		byte[] bytes = write(new TagSnapshot("a1", new Date(1000L), "alice", new Date(2000L), "bob", null, new String[]{"Tag"}));
+		for(int length: new int[]{8, 20, bytes.length - 5, bytes.length - 1}) {
+			try {
+				TagSnapshotReader reader = newReader(Arrays.copyOf(bytes, length));
+				reader.read();
+				reader.read();
+				fail("EOFException expected for length " + length);
+			} catch(EOFException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testBadHeader(
+	) {
+		assertInvalid(new byte[]{0, 0, 0, 0, 0, 1});
+	}
+
+	@Test
+	public void testBadRecordLength(
+	) {
+		assertInvalid(withHeader(ByteBuffer.allocate(4).putInt(-5).array()));
+		assertInvalid(withHeader(ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array()));
+	}
+
+	@Test
+	public void testBadStringLength(
+	) {
+		// Record of 8 bytes whose id claims 100 bytes
+		assertInvalid(withHeader(ByteBuffer.allocate(16).putInt(8).putInt(100).putInt(0).putInt(0).array()));
+		// Record whose id has a negative length other than -1
+		assertInvalid(withHeader(ByteBuffer.allocate(16).putInt(8).putInt(-2).putInt(0).putInt(0).array()));
+	}
+
+	@Test
+	public void testBadTextCount(
+	) throws IOException {
+		byte[] bytes = write(new TagSnapshot("a1", new Date(1000L), "alice", new Date(2000L), "bob", null, new String[0]));
+		// The text count is the last int of the record, followed by the terminator
+		ByteBuffer.wrap(bytes).putInt(bytes.length - 8, 1000);
+		assertInvalid(bytes);
+	}
+
+}